@@ -70,21 +70,140 @@ void IRsendSafe(unsigned long code)
   }
 }
 
+/*
+ * Opcodes of commands used in binary frames.
+ */
+#define OP_LED_ON     0x01
+#define OP_LED_OFF    0x02
+#define OP_LED_WHITE  0x03
+#define OP_LED_IP     0x04
+#define OP_LED_IM     0x05
+#define OP_LED_MACRO  0x06
+
+/*
+ * Binary frame: SYNC | SEQ | LENGTH | PAYLOAD | CHECKSUM
+ * Payload contains commands: OPCODE | ARG_LENGTH | ARGS
+ * Checksum is CRC-8 (polynomial 0x07) of SEQ, LENGTH and PAYLOAD.
+ */
+#define FRAME_SYNC         0xA5
+#define FRAME_MAX_PAYLOAD  48
+
+// States of frame parser.
+#define FRAME_IDLE      0
+#define FRAME_SEQ       1
+#define FRAME_LENGTH    2
+#define FRAME_PAYLOAD   3
+#define FRAME_CHECKSUM  4
+
+/*
+ * Sequenced commands (text lines "SEQ COMMAND [REPEAT]" and binary frames) are executed
+ * only in order of their sequence numbers and acknowledged with "OK SEQ" (or "ERR SEQ")
+ * after they are executed. Retransmitted commands that were already executed are only
+ * acknowledged again. Line "SYNC" makes the device expect sequence number zero.
+ */
+#define MAX_WINDOW  16
+
 String cmdBuffer = "";         // a string to hold incoming data
 boolean cmdComplete = false;  // whether the string is complete
 
+byte frameBuffer[FRAME_MAX_PAYLOAD];  // payload of incoming frame
+byte frameSeq = 0;                    // sequence number of incoming frame
+byte frameLength = 0;                 // length of payload of incoming frame
+byte framePosition = 0;               // number of payload bytes read
+byte frameCrc = 0;                    // checksum of bytes read
+byte frameState = FRAME_IDLE;         // state of frame parser
+boolean frameComplete = false;        // whether the frame is complete and valid
+
+byte expectedSeq = 0;                 // sequence number of the next command to execute
+int commandSeq = -1;                  // sequence number of executed command, -1 if it has none
+
+/*
+ * Macro repeats one command in segments, each segment specified number of
+ * times with specified interval. It runs on millis() timer in the loop, so
+ * commands are still processed while it runs. Its end is reported with
+ * "DONE SEQ" or "ABORTED SEQ", where SEQ is sequence number of the command
+ * that started it.
+ */
+#define MACRO_MAX_SEGMENTS  15
+
+boolean macroRunning = false;                     // whether a macro is running
+int macroSeq = -1;                                // sequence number of command that started the macro
+byte macroOpcode = 0;                             // opcode of the repeated command
+byte macroCounts[MACRO_MAX_SEGMENTS];             // number of steps of each segment
+unsigned int macroIntervals[MACRO_MAX_SEGMENTS];  // interval before each step of each segment in ms
+byte macroSegments = 0;                           // number of segments
+byte macroSegment = 0;                            // index of running segment
+byte macroRemaining = 0;                          // remaining steps of running segment
+unsigned long macroLast = 0;                      // time (millis()) of the last step
+
+/**
+ * Updates CRC-8 (polynomial 0x07) with one byte.
+ */
+byte crc8(byte crc, byte data)
+{
+  crc ^= data;
+  for (byte i = 0; i < 8; i++) {
+    crc = (crc & 0x80) ? (crc << 1) ^ 0x07 : crc << 1;
+  }
+  return crc;
+}
+
+/**
+ * Processes one byte of binary frame.
+ */
+void frameRead(byte inByte)
+{
+  switch (frameState) {
+    case FRAME_SEQ:
+      frameSeq = inByte;
+      frameCrc = crc8(0, inByte);
+      frameState = FRAME_LENGTH;
+      break;
+    case FRAME_LENGTH:
+      if (inByte == 0 || inByte > FRAME_MAX_PAYLOAD) {
+        Serial.println("Invalid frame length!");
+        frameState = FRAME_IDLE;
+      } else {
+        frameLength = inByte;
+        framePosition = 0;
+        frameCrc = crc8(frameCrc, inByte);
+        frameState = FRAME_PAYLOAD;
+      }
+      break;
+    case FRAME_PAYLOAD:
+      frameBuffer[framePosition++] = inByte;
+      frameCrc = crc8(frameCrc, inByte);
+      if (framePosition == frameLength) {
+        frameState = FRAME_CHECKSUM;
+      }
+      break;
+    case FRAME_CHECKSUM:
+      frameState = FRAME_IDLE;
+      if (inByte == frameCrc) {
+        frameComplete = true;
+      } else {
+        Serial.println("Invalid frame checksum!");
+      }
+      break;
+  }
+}
+
 void serialRead() {
-  while (Serial.available()) {
+  // Stop reading after complete command, so the next one is not appended to it.
+  while (Serial.available() && !cmdComplete && !frameComplete) {
     // get the new byte:
-    char inChar = (char)Serial.read();
-    if (inChar == '\n') {
+    byte inByte = (byte)Serial.read();
+    if (frameState != FRAME_IDLE) {
+      frameRead(inByte);
+    } else if (inByte == FRAME_SYNC && cmdBuffer.length() == 0) {
+      frameState = FRAME_SEQ;
+    } else if (inByte == '\n') {
       cmdComplete = true;
     } else {
-      cmdBuffer += inChar;
+      cmdBuffer += (char)inByte;
     }
   }
 }
-
 /**
  * Setup the board.
  */
@@ -103,32 +222,275 @@ void setup()
   pinMode(13, OUTPUT);
   digitalWrite(13, LOW);
 
-  Serial.print("Ready!");
+  Serial.println("Ready!");
 }
 
 /**
- * Executed when the whole command is read from serial input.
+ * Sends the IR code specified number of times.
  */
-void onCommand() 
+void IRsendRepeat(unsigned long code, byte repeat)
 {
-  if(cmdBuffer.equals("LED_ON")) {
-    Serial.print("Sending ON code...");
-    IRsendSafe(ONcode);
-  } else if(cmdBuffer.equals("LED_OFF")) {
-    Serial.print("Sending OFF code...");
-    IRsendSafe(OFFcode);
-  } else if(cmdBuffer.equals("LED_WHITE")) {
-    Serial.print("Sending WHITE code...");
-    IRsendSafe(WHITEcode);
-  } else if(cmdBuffer.equals("LED_IP")) {
-    Serial.print("Sending INTEP code...");
-    IRsendSafe(INTEPcode);
-  } else if(cmdBuffer.equals("LED_IM")) {
-    Serial.print("Sending INTEM code...");
-    IRsendSafe(INTEMcode);
+  for(byte i = 0; i < repeat; i++)
+  {
+    IRsendSafe(code);
+  }
+}
+
+/**
+ * Returns whether command with specified sequence number should be executed.
+ * Acknowledges again commands that were already executed and ignores commands
+ * that came out of order (the host retransmits them).
+ */
+boolean acceptSeq(byte seq)
+{
+  byte diff = seq - expectedSeq;
+  if (diff == 0) {
+    expectedSeq++;
+    return true;
+  }
+  if (diff >= 256 - MAX_WINDOW) {
+    Serial.print("OK ");
+    Serial.println(seq);
   } else {
-    Serial.print("Unsupported command: " + cmdBuffer);
+    Serial.println("Unexpected sequence number!");
+  }
+  return false;
+}
+
+/**
+ * Acknowledges executed command with specified sequence number.
+ */
+void acknowledge(byte seq, boolean ok)
+{
+  Serial.print(ok ? "OK " : "ERR ");
+  Serial.println(seq);
+}
+
+/**
+ * Returns opcode of command with specified name or zero if there is no such command.
+ */
+byte opcodeOf(String name)
+{
+  if(name.equals("LED_ON")) {
+    return OP_LED_ON;
+  } else if(name.equals("LED_OFF")) {
+    return OP_LED_OFF;
+  } else if(name.equals("LED_WHITE")) {
+    return OP_LED_WHITE;
+  } else if(name.equals("LED_IP")) {
+    return OP_LED_IP;
+  } else if(name.equals("LED_IM")) {
+    return OP_LED_IM;
+  } else if(name.equals("LED_MACRO")) {
+    return OP_LED_MACRO;
+  }
+  return 0;
+}
+
+/**
+ * Ends running macro and reports it with specified result ("DONE " or
+ * "ABORTED ") and sequence number of the command that started it.
+ */
+void endMacro(const char *result)
+{
+  macroRunning = false;
+  Serial.print(result);
+  Serial.println(macroSeq);
+}
+
+/**
+ * Starts macro, aborting the running one. Arguments are opcode of repeated
+ * command and segments: COUNT | INTERVAL_LOW | INTERVAL_HIGH. Macro without
+ * segments only aborts the running one. Returns false if the macro is invalid.
+ */
+boolean startMacro(byte *args, byte argLength)
+{
+  byte segments = argLength > 0 ? (argLength - 1) / 3 : 0;
+  if ((argLength > 0 && (argLength - 1) % 3 != 0) || segments > MACRO_MAX_SEGMENTS) {
+    return false;
   }
+  if (segments > 0 && (args[0] == 0 || args[0] == OP_LED_MACRO)) {
+    return false;
+  }
+  for (byte i = 0; i < segments; i++) {
+    if (args[1 + 3 * i] == 0) {
+      return false;
+    }
+  }
+
+  if (macroRunning) {
+    endMacro("ABORTED ");
+  }
+  macroSeq = commandSeq;
+  if (segments == 0) {
+    endMacro("DONE ");
+    return true;
+  }
+  macroOpcode = args[0];
+  for (byte i = 0; i < segments; i++) {
+    macroCounts[i] = args[1 + 3 * i];
+    macroIntervals[i] = args[2 + 3 * i] | (args[3 + 3 * i] << 8);
+  }
+  macroSegments = segments;
+  macroSegment = 0;
+  macroRemaining = macroCounts[0];
+  macroLast = millis();
+  macroRunning = true;
+  return true;
+}
+
+/**
+ * Executes the next step of running macro when its time comes. Steps are
+ * timed from the start of the macro, so time spent sending IR codes does
+ * not delay the following steps.
+ */
+void runMacro()
+{
+  if (!macroRunning || millis() - macroLast < macroIntervals[macroSegment]) {
+    return;
+  }
+
+  macroLast += macroIntervals[macroSegment];
+  executeOpcode(macroOpcode, NULL, 0);
+  if (--macroRemaining == 0) {
+    if (++macroSegment == macroSegments) {
+      endMacro("DONE ");
+    } else {
+      macroRemaining = macroCounts[macroSegment];
+    }
+  }
+}
+
+/**
+ * Executes command with specified opcode. Intensity commands can have
+ * one argument - how many times should be the intensity changed.
+ * Prints one line (terminated by CRLF) before sending the IR code.
+ * Returns false if the opcode is not supported.
+ */
+boolean executeOpcode(byte opcode, byte *args, byte argLength)
+{
+  byte repeat = argLength > 0 ? args[0] : 1;
+
+  switch (opcode) {
+    case OP_LED_ON:
+      Serial.println("Sending ON code...");
+      IRsendSafe(ONcode);
+      break;
+    case OP_LED_OFF:
+      Serial.println("Sending OFF code...");
+      IRsendSafe(OFFcode);
+      break;
+    case OP_LED_WHITE:
+      Serial.println("Sending WHITE code...");
+      IRsendSafe(WHITEcode);
+      break;
+    case OP_LED_IP:
+      Serial.println("Sending INTEP code...");
+      IRsendRepeat(INTEPcode, repeat);
+      break;
+    case OP_LED_IM:
+      Serial.println("Sending INTEM code...");
+      IRsendRepeat(INTEMcode, repeat);
+      break;
+    case OP_LED_MACRO:
+      Serial.println("Starting macro...");
+      return startMacro(args, argLength);
+    default:
+      Serial.print("Unsupported opcode: ");
+      Serial.println(opcode, HEX);
+      return false;
+  }
+  return true;
+}
+
+/**
+ * Removes and returns the first space separated token of specified string.
+ */
+String nextToken(String &rest)
+{
+  int space = rest.indexOf(' ');
+  if(space < 0) {
+    space = rest.length();
+  }
+  String token = rest.substring(0, space);
+  rest = rest.substring(space + 1);
+  return token;
+}
+
+/**
+ * Executed when the whole command is read from serial input. Command has
+ * format "[SEQ ]COMMAND[ REPEAT]" or "[SEQ ]LED_MACRO[ STEP COUNT INTERVAL...]",
+ * commands without sequence number are executed immediately and not acknowledged.
+ */
+void onCommand() 
+{
+  if(cmdBuffer.equals("SYNC")) {
+    expectedSeq = 0;
+    Serial.println("Synchronized!");
+    return;
+  }
+
+  String rest = cmdBuffer;
+  int seq = -1;
+  if(isDigit(rest.charAt(0))) {
+    seq = nextToken(rest).toInt();
+  }
+  String name = nextToken(rest);
+  byte opcode = opcodeOf(name);
+
+  // Arguments are encoded the same way as in binary frames.
+  byte args[FRAME_MAX_PAYLOAD];
+  byte argLength = 0;
+  if(opcode == OP_LED_MACRO && rest.length() > 0) {
+    args[argLength++] = opcodeOf(nextToken(rest));
+    while(rest.length() > 0 && argLength + 3 <= FRAME_MAX_PAYLOAD) {
+      args[argLength++] = nextToken(rest).toInt();
+      unsigned int interval = nextToken(rest).toInt();
+      args[argLength++] = interval & 0xFF;
+      args[argLength++] = interval >> 8;
+    }
+  } else if(rest.length() > 0) {
+    args[argLength++] = rest.toInt();
+  }
+
+  if(seq >= 0 && !acceptSeq(seq)) {
+    return;
+  }
+  commandSeq = seq;
+  boolean ok = opcode != 0 && executeOpcode(opcode, args, argLength);
+  if(opcode == 0) {
+    Serial.println("Unsupported command: " + name);
+  }
+  if(seq >= 0) {
+    acknowledge(seq, ok);
+  }
+}
+
+/**
+ * Executed when the whole binary frame is read from serial input.
+ * Executes all commands of the frame in order and acknowledges the frame.
+ */
+void onFrame()
+{
+  if (!acceptSeq(frameSeq)) {
+    return;
+  }
+
+  commandSeq = frameSeq;
+  boolean ok = true;
+  byte position = 0;
+  while (position + 2 <= frameLength) {
+    byte opcode = frameBuffer[position];
+    byte argLength = frameBuffer[position + 1];
+    if (position + 2 + argLength > frameLength) {
+      Serial.println("Invalid command length!");
+      ok = false;
+      break;
+    }
+    ok &= executeOpcode(opcode, frameBuffer + position + 2, argLength);
+    position += 2 + argLength;
+  }
+  acknowledge(frameSeq, ok);
 }
 
 /**
@@ -139,6 +501,9 @@ void loop()
   // Read command from serial port.
   serialRead();
 
+  // Execute step of running macro.
+  runMacro();
+
   // Dispatch the command if complete.
   if(cmdComplete) {
     // Dispatch command.
@@ -149,4 +514,12 @@ void loop()
     cmdBuffer = "";
     cmdComplete = false;
   }
+
+  // Dispatch the frame if complete.
+  if(frameComplete) {
+    digitalWrite(13, HIGH);
+    onFrame();
+    digitalWrite(13, LOW);
+    frameComplete = false;
+  }
 }
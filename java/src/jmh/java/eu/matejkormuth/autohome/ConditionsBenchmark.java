@@ -0,0 +1,110 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome;
+
+import eu.matejkormuth.autohome.api.Condition;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Compares numeric conditions with boxed (Supplier of Double) and primitive (DoubleSupplier) suppliers,
+ * hysteresis and composite conditions.
+ *
+ * @author Matej Kormuth
+ * @since 1.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ConditionsBenchmark {
+
+    // Value read by suppliers, changes on each check, so the result can't be constant folded.
+    private double value;
+
+    private Condition boxed;
+    private Condition primitive;
+    private Condition hysteresis;
+    private Condition composite;
+
+    @Setup
+    public void setup() {
+        Supplier<Double> boxedSupplier = () -> value;
+        DoubleSupplier primitiveSupplier = () -> value;
+
+        boxed = Conditions.lessThan(5, boxedSupplier);
+        primitive = Conditions.lessThan(5, primitiveSupplier);
+        hysteresis = Conditions.aboveWithHysteresis(7, 3, primitiveSupplier);
+        composite = Conditions.allOf(Conditions.greaterThan(2, primitiveSupplier), primitive);
+    }
+
+    // Moves the value through 0 - 10.
+    private void next() {
+        value += 0.7;
+        if (value > 10) {
+            value -= 10;
+        }
+    }
+
+    @Benchmark
+    public boolean boxedLessThan() {
+        next();
+        return boxed.check();
+    }
+
+    @Benchmark
+    public boolean primitiveLessThan() {
+        next();
+        return primitive.check();
+    }
+
+    @Benchmark
+    public boolean hysteresis() {
+        next();
+        return hysteresis.check();
+    }
+
+    @Benchmark
+    public boolean composite() {
+        next();
+        return composite.check();
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.executor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures Threshold.onStateUpdated() with stable, alternating and noisy sequences of states.
+ *
+ * @author Matej Kormuth
+ * @since 1.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ThresholdBenchmark {
+
+    // Length of the sequence of states, power of two.
+    private static final int LENGTH = 1024;
+
+    @Param({"stable", "alternating", "noisy"})
+    private String sequence;
+
+    @Param({"false", "true"})
+    private boolean edgeTriggered;
+
+    private Threshold threshold;
+    private final boolean[] states = new boolean[LENGTH];
+    private int index;
+    // Number of executed listeners, returned to prevent dead code elimination.
+    private long fired;
+
+    @Setup
+    public void setup() {
+        threshold = new Threshold(3)
+                .isTrue(() -> fired++)
+                .isFalse(() -> fired--);
+        if (edgeTriggered) {
+            threshold.edgeTriggered();
+        }
+
+        Random random = new Random(42);
+        boolean state = true;
+        for (int i = 0; i < LENGTH; i++) {
+            switch (sequence) {
+                case "alternating":
+                    state = !state;
+                    break;
+                case "noisy":
+                    // Flip in 10 % of updates.
+                    state = random.nextInt(10) == 0 ? !state : state;
+                    break;
+                default:
+                    break;
+            }
+            states[i] = state;
+        }
+    }
+
+    @Benchmark
+    public long onStateUpdated() {
+        threshold.onStateUpdated(states[index++ & (LENGTH - 1)]);
+        return fired;
+    }
+}
@@ -26,11 +26,15 @@
  */
 package eu.matejkormuth.autohome;
 
+import eu.matejkormuth.autohome.api.AsyncSwitch;
 import eu.matejkormuth.autohome.comm.ArduinoCOM;
 import eu.matejkormuth.autohome.executor.Executor;
+import eu.matejkormuth.autohome.switches.ArduinoLedSwitch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
+
 /**
  * Class used for application boot-up process.
  */
@@ -46,18 +50,30 @@ public class Bootstrap {
     private static void prepare(Executor executor) {
         // Create things.
         ArduinoCOM arduino = new ArduinoCOM("COM3");
+        arduino.exposeMetrics();
+        // Repeated state is only sent again when at least a minute passed since it was sent.
+        AsyncSwitch lights = new ArduinoLedSwitch(arduino, Duration.ofMinutes(1));
 
-        // When my mobile is reachable turn on the lights.
-        executor.when(Conditions.isReachablePingWIN("192.168.0.14"))
+        // When my mobile is reachable turn on the lights. Send the command when the state changes and
+        // re-assert it every 5 minutes in case the lights missed it.
+        executor.when(Conditions.isReachableProbe("192.168.0.14"))
                 .threshold(2)
-                    .isTrue(arduino::turnLedOn)
-                    .isFalse(arduino::turnLedOff);
+                    .edgeTriggered(Duration.ofMinutes(5))
+                    .isTrue(() -> lights.turnOnAsync().whenComplete(Bootstrap::logFailure))
+                    .isFalse(() -> lights.turnOffAsync().whenComplete(Bootstrap::logFailure));
+    }
+
+    // Logs failure of asynchronous switch action.
+    private static void logFailure(Boolean changed, Throwable e) {
+        if (e != null) {
+            log.error("Can't switch lights because {}!", e);
+        }
     }
 
     // Entry point.
     public static void main(String[] args) {
         // Create basic executor.
-        Executor executor = new Executor(1);
+        Executor executor = new Executor(1).exposeMetrics("main");
 
         // Prepare all devices and logic / connections between them.
         prepare(executor);
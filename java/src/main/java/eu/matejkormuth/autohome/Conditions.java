@@ -27,6 +27,11 @@
 package eu.matejkormuth.autohome;
 
 import eu.matejkormuth.autohome.api.Condition;
+import eu.matejkormuth.autohome.conditions.CachedCondition;
+import eu.matejkormuth.autohome.conditions.CompositeCondition;
+import eu.matejkormuth.autohome.conditions.HysteresisCondition;
+import eu.matejkormuth.autohome.net.NeighborTable;
+import eu.matejkormuth.autohome.net.ReachabilityProbe;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,6 +39,9 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.InetAddress;
+import java.time.Duration;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
 import java.util.function.Supplier;
 
 /**
@@ -82,6 +90,25 @@ public class Conditions {
         };
     }
 
+    /**
+     * Returns whether device with specified IP address or MAC address is present in local network according
+     * to the kernel ARP table (/proc/net/arp). Nothing is sent to the network, so this works even for phones
+     * that drop pings in power save mode. The ARP table is shared by all such conditions and re-read every
+     * 5 seconds. Only works on Linux.
+     *
+     * @param ipOrMac IP address or MAC address (aa:bb:cc:dd:ee:ff) of the device
+     * @return condition that returns true if the device is present, false otherwise
+     * @see NeighborTable
+     */
+    public static Condition isPresent(String ipOrMac) {
+        return ArpTableHolder.TABLE.presence(ipOrMac);
+    }
+
+    // Lazily created ARP table shared by isPresent() conditions.
+    private static final class ArpTableHolder {
+        private static final NeighborTable TABLE = NeighborTable.arp(Duration.ofSeconds(5));
+    }
+
     /**
      * Takes supplier of doubles and checks if supplied number is less than specified max number.
      * <p>
@@ -160,6 +187,228 @@ public class Conditions {
         return () -> Math.abs(supplier.get() - value) > EPSILON;
     }
 
+    /**
+     * Takes supplier of primitive doubles and checks if supplied number is less than specified max number.
+     * Unlike the Supplier variant, this does not box the value on each check.
+     *
+     * @param max      maximum value
+     * @param supplier supplier of values to check
+     * @return condition that returns true when supplied number is less than specified number and false otherwise
+     */
+    public static Condition lessThan(double max, DoubleSupplier supplier) {
+        return () -> supplier.getAsDouble() < max;
+    }
+
+    /**
+     * Takes supplier of primitive doubles and checks if supplied number is less than or equal specified max
+     * number. Unlike the Supplier variant, this does not box the value on each check.
+     *
+     * @param max      maximum value
+     * @param supplier supplier of values to check
+     * @return condition that returns true when supplied number is less than or equal to specified number and
+     * false otherwise
+     */
+    public static Condition lessThanOrEqual(double max, DoubleSupplier supplier) {
+        return () -> supplier.getAsDouble() <= max;
+    }
+
+    /**
+     * Takes supplier of primitive doubles and checks if supplied number is greater than specified min number.
+     * Unlike the Supplier variant, this does not box the value on each check.
+     *
+     * @param min      minimal value
+     * @param supplier supplier of values to check
+     * @return condition that returns true when supplied number is greater than specified number and false otherwise
+     */
+    public static Condition greaterThan(double min, DoubleSupplier supplier) {
+        return () -> supplier.getAsDouble() > min;
+    }
+
+    /**
+     * Takes supplier of primitive doubles and checks if supplied number is greater than or equal specified
+     * min number. Unlike the Supplier variant, this does not box the value on each check.
+     *
+     * @param min      minimal value
+     * @param supplier supplier of values to check
+     * @return condition that returns true when supplied number is greater than or equal to specified number
+     * and false otherwise
+     */
+    public static Condition greaterThanOrEqual(double min, DoubleSupplier supplier) {
+        return () -> supplier.getAsDouble() >= min;
+    }
+
+    /**
+     * Takes supplier of primitive doubles and checks if supplied number is equal to specified number.
+     * This uses epsilon = 0.001D.
+     *
+     * @param value    specified number
+     * @param supplier supplier of values to check
+     * @return condition that returns true when supplied number is equal specified number and false otherwise
+     */
+    public static Condition equalTo(double value, DoubleSupplier supplier) {
+        return () -> Math.abs(supplier.getAsDouble() - value) < EPSILON;
+    }
+
+    /**
+     * Takes supplier of primitive doubles and checks if supplied number is not equal to specified number.
+     * This uses epsilon = 0.001D.
+     *
+     * @param value    specified number
+     * @param supplier supplier of values to check
+     * @return condition that returns true when supplied number is not equal specified number and false otherwise
+     */
+    public static Condition notEqualTo(double value, DoubleSupplier supplier) {
+        return () -> Math.abs(supplier.getAsDouble() - value) > EPSILON;
+    }
+
+    /**
+     * Takes supplier of primitive longs and checks if supplied number is less than specified max number.
+     *
+     * @param max      maximum value
+     * @param supplier supplier of values to check
+     * @return condition that returns true when supplied number is less than specified number and false otherwise
+     */
+    public static Condition lessThan(long max, LongSupplier supplier) {
+        return () -> supplier.getAsLong() < max;
+    }
+
+    /**
+     * Takes supplier of primitive longs and checks if supplied number is greater than specified min number.
+     *
+     * @param min      minimal value
+     * @param supplier supplier of values to check
+     * @return condition that returns true when supplied number is greater than specified number and false otherwise
+     */
+    public static Condition greaterThan(long min, LongSupplier supplier) {
+        return () -> supplier.getAsLong() > min;
+    }
+
+    /**
+     * Takes supplier of primitive longs and checks if supplied number is equal to specified number.
+     *
+     * @param value    specified number
+     * @param supplier supplier of values to check
+     * @return condition that returns true when supplied number is equal specified number and false otherwise
+     */
+    public static Condition equalTo(long value, LongSupplier supplier) {
+        return () -> supplier.getAsLong() == value;
+    }
+
+    /**
+     * Takes supplier of primitive doubles and checks if supplied number is above a band. The condition becomes
+     * true when supplied number is greater than on threshold and stays true until it is less than off threshold.
+     * <p>
+     * This can be used with temperature sensors to turn on cooling without flipping the relay on each check
+     * when the temperature hovers around one value.
+     *
+     * @param on       number above which the condition becomes true
+     * @param off      number below which the condition becomes false, must not be greater than on
+     * @param supplier supplier of values to check
+     * @return condition with hysteresis
+     */
+    public static Condition aboveWithHysteresis(double on, double off, DoubleSupplier supplier) {
+        return HysteresisCondition.above(on, off, supplier);
+    }
+
+    /**
+     * Takes supplier of primitive doubles and checks if supplied number is below a band. The condition becomes
+     * true when supplied number is less than on threshold and stays true until it is greater than off threshold.
+     * <p>
+     * This can be used with temperature sensors to turn on heating without flipping the relay on each check
+     * when the temperature hovers around one value.
+     *
+     * @param on       number below which the condition becomes true
+     * @param off      number above which the condition becomes false, must not be less than on
+     * @param supplier supplier of values to check
+     * @return condition with hysteresis
+     */
+    public static Condition belowWithHysteresis(double on, double off, DoubleSupplier supplier) {
+        return HysteresisCondition.below(on, off, supplier);
+    }
+
+    /**
+     * Returns condition which is true when all of specified conditions are true. Checking stops at the first
+     * false condition and conditions that are cheap and often false are checked first.
+     *
+     * @param conditions conditions to combine
+     * @return composite condition
+     */
+    public static Condition allOf(Condition... conditions) {
+        return CompositeCondition.allOf(conditions);
+    }
+
+    /**
+     * Returns condition which is true when any of specified conditions is true. Checking stops at the first
+     * true condition and conditions that are cheap and often true are checked first.
+     *
+     * @param conditions conditions to combine
+     * @return composite condition
+     */
+    public static Condition anyOf(Condition... conditions) {
+        return CompositeCondition.anyOf(conditions);
+    }
+
+    /**
+     * Returns condition which is true when specified condition is false.
+     *
+     * @param condition condition to negate
+     * @return negated condition
+     */
+    public static Condition not(Condition condition) {
+        return () -> !condition.check();
+    }
+
+    /**
+     * Returns condition that remembers the result of specified condition for specified time. Concurrent
+     * checks of expired result share one check of specified condition. To share cached condition between
+     * multiple rules, use ConditionCache.
+     *
+     * @param condition condition to cache results of
+     * @param ttl       how long the result is remembered
+     * @return cached condition
+     * @see eu.matejkormuth.autohome.conditions.ConditionCache
+     */
+    public static CachedCondition cached(Condition condition, Duration ttl) {
+        return new CachedCondition(condition, ttl);
+    }
+
+    /**
+     * Returns whether specified hostname is currently reachable by opening TCP connection to port 7 (echo)
+     * with timeout of 1000 ms. The host is reachable if it accepts or refuses the connection.
+     * <p>
+     * Unlike isReachablePingWIN() this does not spawn any process and works on all platforms. Round trip
+     * time of the last check is available from the returned probe.
+     *
+     * @param hostname hostname to test availability of
+     * @return condition that returns true if specified hostname is reachable, false otherwise
+     * @see ReachabilityProbe
+     */
+    public static ReachabilityProbe isReachableProbe(String hostname) {
+        return isReachableProbe(hostname, 7, 1000);
+    }
+
+    /**
+     * Returns whether specified hostname is currently reachable by opening TCP connection to specified port
+     * with specified timeout in ms. The host is reachable if it accepts or refuses the connection.
+     *
+     * @param hostname hostname to test availability of
+     * @param port     TCP port to connect to
+     * @param timeout  timeout in ms
+     * @return condition that returns true if specified hostname is reachable, false otherwise
+     * @see ReachabilityProbe
+     */
+    public static ReachabilityProbe isReachableProbe(String hostname, int port, int timeout) {
+        return new ReachabilityProbe(hostname, port, timeout);
+    }
+
+    /**
+     * Returns whether specified address responds to Windows ping command. Spawns new process on each check.
+     *
+     * @param address address to ping
+     * @return condition that returns true if specified address responds to ping, false otherwise
+     * @deprecated only works on Windows and spawns process on each check, use isReachableProbe() instead
+     */
+    @Deprecated
     public static Condition isReachablePingWIN(String address) {
         return () -> {
             try {
@@ -0,0 +1,76 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.api;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Represents switch whose actions complete asynchronously, so actions on many switches can run concurrently
+ * and further actions can be chained to their completion. Blocking turnOn() and turnOff() wait for the
+ * asynchronous actions.
+ *
+ * @author Matej Kormuth
+ * @see eu.matejkormuth.autohome.switches.ArduinoLedSwitch
+ * @since 1.0.0
+ */
+public interface AsyncSwitch extends Switch {
+    /**
+     * Sets state of this switch to on without waiting for the device.
+     *
+     * @return future completed with true if the state of the switch changed, false if it already was on, or
+     * completed exceptionally if the device could not be turned on
+     */
+    CompletableFuture<Boolean> turnOnAsync();
+
+    /**
+     * Sets state of this switch to off without waiting for the device.
+     *
+     * @return future completed with true if the state of the switch changed, false if it already was off, or
+     * completed exceptionally if the device could not be turned off
+     */
+    CompletableFuture<Boolean> turnOffAsync();
+
+    /**
+     * Sets state of this switch to on and waits until the device is turned on.
+     *
+     * @throws java.util.concurrent.CompletionException if the device could not be turned on
+     */
+    @Override
+    default void turnOn() {
+        turnOnAsync().join();
+    }
+
+    /**
+     * Sets state of this switch to off and waits until the device is turned off.
+     *
+     * @throws java.util.concurrent.CompletionException if the device could not be turned off
+     */
+    @Override
+    default void turnOff() {
+        turnOffAsync().join();
+    }
+}
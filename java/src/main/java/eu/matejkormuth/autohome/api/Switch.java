@@ -30,6 +30,7 @@ package eu.matejkormuth.autohome.api;
  * Represents switch that can be turned off and/or turned on multiple times.
  *
  * @author Matej Kormuth
+ * @see AsyncSwitch
  * @see eu.matejkormuth.autohome.switches.FakeSwitch
  * @since 1.0.0
  */
@@ -26,88 +26,958 @@
  */
 package eu.matejkormuth.autohome.comm;
 
+import eu.matejkormuth.autohome.metrics.Jmx;
+import eu.matejkormuth.autohome.metrics.SerialMetrics;
 import jssc.SerialPort;
+import jssc.SerialPortEvent;
 import jssc.SerialPortException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.ObjectName;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 public class ArduinoCOM {
 
     private static final Logger log = LoggerFactory.getLogger(ArduinoCOM.class);
 
+    // Default capacity of command queue.
+    private static final int DEFAULT_QUEUE_CAPACITY = 64;
+    // Default number of transmissions written before the first one is acknowledged.
+    private static final int DEFAULT_WINDOW = 4;
+    // Maximum number of transmissions in flight, the device recognizes this many retransmitted sequence numbers.
+    public static final int MAX_WINDOW = 16;
+    // Size of receive buffer of the device, transmissions in flight must fit into it.
+    private static final int DEVICE_BUFFER = 64;
+    // How long to wait for acknowledgement of a command without IR codes.
+    private static final long ACK_TIMEOUT_MILLIS = 1000;
+    // How long it takes the device to send one IR code (it is sent 3 times, about 70 ms each).
+    private static final long IR_SEND_MILLIS = 250;
+    // How many times is a transmission written again before its commands fail.
+    private static final int MAX_RETRIES = 2;
+    // Line that makes the device expect sequence number zero.
+    private static final byte[] SYNC_LINE = "SYNC\n".getBytes(StandardCharsets.US_ASCII);
+    // Length of the longest sequence number prefix of line in text protocol, "255 ".
+    private static final int SEQ_PREFIX = 4;
+    // Reply of the device to SYNC_LINE.
+    private static final String SYNCHRONIZED = "Synchronized!";
+    // Line printed by the device after it (re)starts.
+    private static final String READY = "Ready!";
+    // Capacity of buffer of received bytes, longer lines are split.
+    private static final int RECEIVE_BUFFER = 256;
+    // Maximum number of commands written at once in binary protocol.
+    private static final int MAX_BATCH = 16;
+    // Arguments of command without arguments.
+    private static final byte[] NO_ARGS = new byte[0];
+    // Number of intensity steps between the lowest and the highest intensity.
+    public static final int MAX_INTENSITY_LEVEL = 50;
+    // Duration of fade through all intensity steps used by fadeLedOn() and fadeLedOff().
+    private static final Duration DEFAULT_FADE_DURATION = Duration.ofMillis(MAX_INTENSITY_LEVEL * 500);
+
     private final String portName;
-    private SerialPort port;
+    private final SerialPort port;
+
+    // Commands waiting to be written by writer thread.
+    private final CommandQueue queue;
+    // Protocol used to write commands.
+    private final SerialProtocol protocol;
+    // Transmissions written and not acknowledged yet.
+    private final InFlightWindow window;
+    // Commands that are written at once. Only accessed from writer thread.
+    private final List<PendingCommand> batch = new ArrayList<>(MAX_BATCH);
+    // Frame used to write commands in binary protocol. Only accessed from writer thread.
+    private final FrameBuilder frame = new FrameBuilder();
+    // Commands completed by the frame that is being built. Only accessed from writer thread.
+    private final List<PendingCommand> frameCommands = new ArrayList<>(MAX_BATCH);
+    // Splits received bytes to lines. Only accessed from event thread of serial port.
+    private final LineReader reader = new LineReader(RECEIVE_BUFFER, this::onLine);
+    // Macros started by the device, by sequence number of their transmission.
+    private final Map<Integer, PendingCommand> macros = new ConcurrentHashMap<>();
+    // Subscribers of received lines.
+    private final List<LineListener> subscribers = new CopyOnWriteArrayList<>();
+    // Thread that writes commands to serial port.
+    private final Thread writer;
+    private volatile boolean running = true;
+    // Whether the device confirmed the last SYNC, acknowledgements are ignored until then.
+    private volatile boolean synced = false;
+    // Whether the device restarted and writer thread should synchronize sequence numbers again.
+    private volatile boolean restarted = false;
+    // Metrics of commands.
+    private final SerialMetrics metrics;
+    // Name of registered MBean or null when metrics are not exposed.
+    private volatile ObjectName mbean;
+
+    // Executor of completions of fades.
+    private final ScheduledExecutorService timer;
+    // Lock guarding the state of LEDs and fades.
+    private final Object ledLock = new Object();
+    // Whether the LEDs are believed to be on.
+    private boolean isOn = false;
+    // Believed intensity level of the LEDs, from 0 to MAX_INTENSITY_LEVEL.
+    private int intensityLevel = 0;
+    // Currently running fade or null.
+    private Fade fade;
+    // Commands decided while holding ledLock, in the order of decisions. They are put to the queue by flush()
+    // after ledLock is released, so waiting for free space in the queue never blocks holders of ledLock.
+    private final ConcurrentLinkedQueue<PendingCommand> outbox = new ConcurrentLinkedQueue<>();
+    // Held while commands from outbox are put to the queue, so they keep the order of decisions.
+    private final Object outboxLock = new Object();
 
     public ArduinoCOM(String portName) {
-        this.portName = portName;
-        port = new SerialPort(portName);
+        this(portName, DEFAULT_QUEUE_CAPACITY, BackpressurePolicy.BLOCK);
+    }
+
+    /**
+     * Creates new ArduinoCOM with command queue of specified capacity.
+     *
+     * @param portName      name of serial port the device is connected to
+     * @param queueCapacity maximum number of commands waiting to be written
+     * @param policy        what to do when command is sent and the queue is full
+     */
+    public ArduinoCOM(String portName, int queueCapacity, BackpressurePolicy policy) {
+        this(portName, queueCapacity, policy, SerialProtocol.TEXT);
+    }
+
+    /**
+     * Creates new ArduinoCOM with command queue of specified capacity, that uses specified protocol.
+     *
+     * @param portName      name of serial port the device is connected to
+     * @param queueCapacity maximum number of commands waiting to be written
+     * @param policy        what to do when command is sent and the queue is full
+     * @param protocol      protocol used to write commands
+     */
+    public ArduinoCOM(String portName, int queueCapacity, BackpressurePolicy policy, SerialProtocol protocol) {
+        this(portName, queueCapacity, policy, protocol, DEFAULT_WINDOW);
+    }
+
+    /**
+     * Creates new ArduinoCOM with command queue of specified capacity, that uses specified protocol and
+     * writes up to specified number of transmissions (lines in text protocol, frames in binary protocol)
+     * before the first one is acknowledged. Transmissions in flight are also limited by receive buffer of the
+     * device. Window of size 1 waits for acknowledgement of each transmission before writing the next one.
+     *
+     * @param portName      name of serial port the device is connected to
+     * @param queueCapacity maximum number of commands waiting to be written
+     * @param policy        what to do when command is sent and the queue is full
+     * @param protocol      protocol used to write commands
+     * @param window        maximum number of transmissions in flight, from 1 to MAX_WINDOW
+     */
+    public ArduinoCOM(String portName, int queueCapacity, BackpressurePolicy policy, SerialProtocol protocol,
+                      int window) {
+        this(new SerialPort(portName), queueCapacity, policy, protocol, window);
+    }
+
+    ArduinoCOM(SerialPort port, int queueCapacity, BackpressurePolicy policy, SerialProtocol protocol, int window) {
+        if (window <= 0 || window > MAX_WINDOW) {
+            throw new IllegalArgumentException("Window must be from 1 to " + MAX_WINDOW + "!");
+        }
+        this.portName = port.getPortName();
+        this.port = port;
+        this.queue = new CommandQueue(queueCapacity, policy);
+        this.protocol = protocol;
+        this.window = new InFlightWindow(window, DEVICE_BUFFER, ACK_TIMEOUT_MILLIS, IR_SEND_MILLIS,
+                TimeUnit.MILLISECONDS);
+        this.metrics = new SerialMetrics(queue::size);
         try {
             port.openPort();
             port.setParams(SerialPort.BAUDRATE_38400, 8, 1, SerialPort.PARITY_NONE);
-            // Try to read something.
-            tryRead();
+            // Received bytes are read when they arrive, on the event thread of the port.
+            port.addEventListener(this::onSerialEvent, SerialPort.MASK_RXCHAR);
         } catch (SerialPortException e) {
             log.error("Can't init serial port!", e);
         }
+
+        writer = new Thread(this::writeLoop, "ArduinoCOM-" + portName);
+        writer.setDaemon(true);
+        writer.start();
+
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ArduinoCOM-fade-" + portName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Sends specified command to the device. This method does not wait for the command to be written, it only
+     * puts the command to the queue. If the queue is full, backpressure policy of this ArduinoCOM is applied.
+     * <p>
+     * The future is completed on the event thread of the serial port, so its dependent actions should not block.
+     *
+     * @param cmd command to send
+     * @return future that is completed with the acknowledgement line of the device when the device has executed
+     * the command, or completed exceptionally if it could not be written, the device rejected it or did not
+     * acknowledge it in time even after retransmissions
+     */
+    public CompletableFuture<String> sendCommand(ArduinoCommand cmd) {
+        if (cmd == ArduinoCommand.LED_MACRO) {
+            throw new IllegalArgumentException("Macros are sent by sendMacro()!");
+        }
+        return send(new PendingCommand(cmd));
+    }
+
+    /**
+     * Sends specified macro to the device. The device executes steps of the macro on its own timer and aborts
+     * the macro that was running. Stop macro only aborts the running macro.
+     * <p>
+     * The future is completed on the event thread of the serial port, so its dependent actions should not block.
+     *
+     * @param macro macro to execute
+     * @return future that is completed with the line of the device when the device has executed all steps of the
+     * macro, or completed exceptionally if it could not be written, the device rejected it, did not acknowledge it
+     * in time or the macro was aborted by another macro
+     * @throws IllegalArgumentException if the macro does not fit into the receive buffer of the device
+     */
+    public CompletableFuture<String> sendMacro(Macro macro) {
+        return send(macroCommand(macro));
+    }
+
+    // Creates command of specified macro, checking that it fits into the receive buffer of the device.
+    private PendingCommand macroCommand(Macro macro) {
+        if (!fits(macro, protocol)) {
+            throw new IllegalArgumentException(macro + " is longer than receive buffer of the device ("
+                    + DEVICE_BUFFER + " bytes) in " + protocol + " protocol!");
+        }
+        return new PendingCommand(macro);
+    }
+
+    // Returns whether transmission of specified macro fits into the receive buffer of the device. Binary frame
+    // always fits, line in text protocol takes a few bytes per segment.
+    static boolean fits(Macro macro, SerialProtocol protocol) {
+        return protocol == SerialProtocol.BINARY || SEQ_PREFIX + macro.toText().length() + 1 <= DEVICE_BUFFER;
+    }
+
+    // Returns macro of fade with as many segments as fit into the receive buffer of the device.
+    static Macro fadeMacro(ArduinoCommand step, int steps, Duration duration, FadeCurve curve,
+                           SerialProtocol protocol) {
+        Macro macro = null;
+        for (int segments = Macro.MAX_SEGMENTS; segments > 0; segments--) {
+            macro = Macro.fade(step, steps, duration, curve, segments);
+            if (fits(macro, protocol)) {
+                break;
+            }
+        }
+        return macro;
+    }
+
+    // Puts specified command to the queue.
+    private CompletableFuture<String> send(PendingCommand pending) {
+        if (!running) {
+            pending.future.completeExceptionally(new IllegalStateException("ArduinoCOM is closed!"));
+            return pending.future;
+        }
+
+        try {
+            queue.offer(pending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.future.completeExceptionally(e);
+        } catch (RejectedExecutionException e) {
+            log.warn("Can't send {}, command queue is full!", pending);
+            pending.future.completeExceptionally(e);
+        }
+        return pending.future;
+    }
+
+    // Writes queued commands to serial port and retransmits commands that were not acknowledged in time.
+    // Runs on writer thread.
+    private void writeLoop() {
+        // Device may still expect sequence numbers of previous connection. Many boards restart when the port
+        // is opened and lose this SYNC in the bootloader, it is sent again when the device prints READY.
+        resync(null);
+        while (running) {
+            try {
+                // Commands are taken only when they can be written, so waiting commands can still be coalesced.
+                awaitWindow(0);
+                PendingCommand first = queue.poll(window.untilExpiry(System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (restarted) {
+                    restarted = false;
+                    log.warn("Device on {} restarted, synchronizing sequence numbers.", portName);
+                    resync(new IllegalStateException("Device restarted before acknowledging the command!"));
+                }
+                retransmitExpired();
+                if (first == null) {
+                    continue;
+                }
+
+                takeBatch(first);
+                write(batch);
+            } catch (SerialPortException e) {
+                log.error("Can't write " + batch + " to serial port!", e);
+                // Commands of the batch that were already written are failed by resync(), count each only once.
+                for (int i = 0; i < batch.size(); i++) {
+                    if (batch.get(i).future.completeExceptionally(e)) {
+                        metrics.failed();
+                    }
+                }
+                resync(e);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+
+        // Fail all commands that were not acknowledged.
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).future.cancel(false);
+        }
+        for (Transmission transmission : window.clear()) {
+            for (int i = 0; i < transmission.commands.size(); i++) {
+                transmission.commands.get(i).future.cancel(false);
+            }
+        }
+        for (PendingCommand pending : queue.clear()) {
+            pending.future.cancel(false);
+        }
+        for (PendingCommand macro : macros.values()) {
+            macro.future.cancel(false);
+        }
+        macros.clear();
+    }
+
+    // Takes specified command and in binary protocol also other waiting commands.
+    private void takeBatch(PendingCommand pending) {
+        batch.clear();
+        do {
+            // Command was dropped or cancelled while waiting.
+            if (!pending.future.isDone()) {
+                batch.add(pending);
+            }
+        } while (protocol == SerialProtocol.BINARY && batch.size() < MAX_BATCH && (pending = queue.poll()) != null);
+    }
+
+    // Writes specified commands to serial port using protocol of this ArduinoCOM. Command repeated more than
+    // 255 times is split to multiple commands.
+    private void write(List<PendingCommand> commands) throws SerialPortException, InterruptedException {
+        if (protocol == SerialProtocol.TEXT) {
+            // Line has format "SEQ COMMAND [REPEAT]", for example "12 LED_IP 5".
+            for (int i = 0; i < commands.size(); i++) {
+                PendingCommand pending = commands.get(i);
+                if (pending.macro != null) {
+                    // Device acknowledges macro when it starts it, so there are no IR codes to wait for.
+                    int seq = window.nextSeq();
+                    Transmission transmission = new Transmission(seq,
+                            (seq + " " + pending.macro.toText() + "\n").getBytes(StandardCharsets.US_ASCII), 0);
+                    transmission.commands.add(pending);
+                    macros.put(seq, pending);
+                    transmit(transmission);
+                    continue;
+                }
+                for (int remaining = pending.repeat; remaining > 0; remaining -= 255) {
+                    int count = Math.min(remaining, 255);
+                    int seq = window.nextSeq();
+                    String line = seq + " " + pending.command.getCmd() + (pending.repeat == 1 ? "" : " " + count);
+                    Transmission transmission = new Transmission(seq, (line + "\n").getBytes(StandardCharsets.US_ASCII),
+                            count);
+                    if (remaining <= 255) {
+                        transmission.commands.add(pending);
+                    }
+                    transmit(transmission);
+                }
+            }
+            return;
+        }
+
+        frame.reset();
+        frameCommands.clear();
+        int sends = 0;
+        for (int i = 0; i < commands.size(); i++) {
+            PendingCommand pending = commands.get(i);
+            byte opcode = pending.command.getOpcode();
+            if (pending.macro != null) {
+                // Macro is written in its own frame, so its sequence number identifies it in the reports.
+                if (!frame.isEmpty()) {
+                    transmitFrame(sends);
+                    sends = 0;
+                }
+                frame.add(opcode, pending.macro.toArgs());
+                frameCommands.add(pending);
+                transmitFrame(0);
+                continue;
+            }
+            // Repeated command has repeat count as its argument.
+            for (int remaining = pending.repeat; remaining > 0; remaining -= 255) {
+                int count = Math.min(remaining, 255);
+                byte[] args = pending.repeat == 1 ? NO_ARGS : new byte[]{(byte) count};
+                if (!frame.add(opcode, args)) {
+                    // Frame is full, write it and continue with next one.
+                    transmitFrame(sends);
+                    sends = 0;
+                    frame.add(opcode, args);
+                }
+                sends += count;
+            }
+            frameCommands.add(pending);
+        }
+        if (!frame.isEmpty()) {
+            transmitFrame(sends);
+        }
     }
 
-    public void sendCommand(ArduinoCommand cmd) {
-        // Send command.
+    // Writes built frame as one transmission and starts a new one.
+    private void transmitFrame(int sends) throws SerialPortException, InterruptedException {
+        int seq = window.nextSeq();
+        Transmission transmission = new Transmission(seq, frame.toByteArray(seq), sends);
+        transmission.commands.addAll(frameCommands);
+        for (int i = 0; i < frameCommands.size(); i++) {
+            if (frameCommands.get(i).macro != null) {
+                macros.put(seq, frameCommands.get(i));
+            }
+        }
+        transmit(transmission);
+        frame.reset();
+        frameCommands.clear();
+    }
+
+    // Writes specified transmission when it fits into the window.
+    private void transmit(Transmission transmission) throws SerialPortException, InterruptedException {
+        awaitWindow(transmission.bytes.length);
+        // Added before it is written, so its acknowledgement can't arrive before the window knows it.
+        window.add(transmission, System.nanoTime());
+        port.writeBytes(transmission.bytes);
+    }
+
+    // Waits until transmission of specified length fits into the window, retransmitting expired transmissions.
+    private void awaitWindow(int length) throws SerialPortException, InterruptedException {
+        while (!window.awaitSpace(length)) {
+            retransmitExpired();
+        }
+    }
+
+    // Writes again all transmissions in flight if the oldest one was not acknowledged in time. Fails them when
+    // the oldest one was already retransmitted MAX_RETRIES times.
+    private void retransmitExpired() throws SerialPortException {
+        Transmission[] expired = window.expired(System.nanoTime());
+        if (expired.length == 0) {
+            return;
+        }
+
+        if (expired[0].attempts > MAX_RETRIES + 1) {
+            resync(new TimeoutException("Device did not acknowledge " + expired[0] + "!"));
+            return;
+        }
+        log.warn("Device did not acknowledge {} in time, retransmitting {} transmissions.", expired[0],
+                expired.length);
+        for (Transmission transmission : expired) {
+            metrics.retransmitted();
+            port.writeBytes(transmission.bytes);
+        }
+    }
+
+    // Fails all transmissions in flight with specified cause (if any) and makes the device expect sequence
+    // number zero, which is the next sequence number of the window.
+    private void resync(Exception cause) {
+        // Acknowledgements of old transmissions could acknowledge new transmissions with the same sequence
+        // numbers, so they are ignored until the device confirms it received SYNC.
+        synced = false;
+        for (Transmission transmission : window.clear()) {
+            for (int i = 0; i < transmission.commands.size(); i++) {
+                if (!transmission.commands.get(i).future.completeExceptionally(cause)) {
+                    continue;
+                }
+                if (cause instanceof TimeoutException) {
+                    metrics.timedOut();
+                } else {
+                    metrics.failed();
+                }
+            }
+        }
         try {
-            port.writeString(cmd.getCmd() + "\n");
+            port.writeBytes(SYNC_LINE);
         } catch (SerialPortException e) {
-            log.error("Can't write " + cmd.getCmd() + " to serial port!", e);
+            log.error("Can't synchronize sequence numbers with device!", e);
         }
-        // Try to receive all bytes from serial port.
-        tryRead();
     }
 
-    private void tryRead() {
+    // Reads received bytes. Called on event thread of serial port.
+    private void onSerialEvent(SerialPortEvent event) {
+        if (!event.isRXCHAR() || event.getEventValue() <= 0) {
+            return;
+        }
         try {
-            String str = port.readString();
-            log.info("{} >> {}", portName, str);
+            // jssc can't read into a supplied buffer and allocates an array for each read. Bytes that arrived
+            // since the event was fired are read too, so a burst is read by one call and events of bytes that
+            // were already read do not read (and allocate) at all.
+            int available = port.getInputBufferBytesCount();
+            if (available > 0) {
+                reader.feed(port.readBytes(available));
+            }
         } catch (SerialPortException e) {
             log.error("Can't read from serial port!", e);
         }
     }
 
-    private void sleep(long milis) {
+    // Processes acknowledgements and passes received line to subscribers.
+    private void onLine(CharSequence line) {
+        if (log.isDebugEnabled()) {
+            log.debug("{} >> {}", portName, line);
+        }
+        if (startsWith(line, SYNCHRONIZED) && line.length() == SYNCHRONIZED.length()) {
+            synced = true;
+        }
+        // Restarted device expects sequence number zero, but the window continues with its own and
+        // acknowledgements are ignored until SYNC is confirmed. Writer thread synchronizes them again.
+        if (startsWith(line, READY) && line.length() == READY.length()) {
+            synced = false;
+            restarted = true;
+            queue.wakeUp();
+        }
+        // Device acknowledges executed transmission with "OK SEQ" or "ERR SEQ" when it could not execute it.
+        boolean ok = startsWith(line, "OK ");
+        if (synced && (ok || startsWith(line, "ERR "))) {
+            int seq = parseSeq(line, ok ? 3 : 4);
+            if (seq >= 0) {
+                acknowledged(seq, ok, line.toString());
+            }
+        }
+        // Macro started by transmission SEQ reports "DONE SEQ" after its last step or "ABORTED SEQ".
+        boolean done = startsWith(line, "DONE ");
+        if (done || startsWith(line, "ABORTED ")) {
+            int seq = parseSeq(line, done ? 5 : 8);
+            PendingCommand macro = seq >= 0 ? macros.remove(seq) : null;
+            if (macro != null && done) {
+                macro.future.complete(line.toString());
+            } else if (macro != null) {
+                macro.future.completeExceptionally(new CancellationException(macro + " was aborted!"));
+            }
+        }
+
+        for (LineListener subscriber : subscribers) {
+            try {
+                subscriber.onLine(line);
+            } catch (Exception e) {
+                log.error("Can't notify {} because {}!", subscriber, e);
+            }
+        }
+    }
+
+    // Completes commands of transmission with specified sequence number and all older transmissions.
+    private void acknowledged(int seq, boolean ok, String reply) {
+        List<Transmission> acknowledged = window.acknowledge(seq);
+        long now = System.nanoTime();
+        for (int i = 0; i < acknowledged.size(); i++) {
+            Transmission transmission = acknowledged.get(i);
+            metrics.getRoundTrip().record(now - transmission.written);
+            for (int j = 0; j < transmission.commands.size(); j++) {
+                PendingCommand pending = transmission.commands.get(j);
+                if (!ok && transmission.seq == seq) {
+                    metrics.failed();
+                    macros.remove(seq);
+                    pending.future.completeExceptionally(new IllegalStateException("Device rejected " + pending
+                            + ": " + reply));
+                } else {
+                    metrics.getLatency().record(now - pending.created);
+                    // Macro is completed when the device reports it is done.
+                    if (pending.macro == null) {
+                        pending.future.complete(reply);
+                    }
+                }
+            }
+        }
+    }
+
+    // Returns whether specified line starts with specified prefix.
+    private static boolean startsWith(CharSequence line, String prefix) {
+        if (line.length() < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (line.charAt(i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Parses sequence number at specified position of the line. Returns -1 if it is not a valid sequence number.
+    private static int parseSeq(CharSequence line, int start) {
+        if (start >= line.length()) {
+            return -1;
+        }
+        int seq = 0;
+        for (int i = start; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9' || (seq = seq * 10 + (c - '0')) >= InFlightWindow.SEQUENCE_SPACE) {
+                return -1;
+            }
+        }
+        return seq;
+    }
+
+    /**
+     * Subscribes specified listener to lines received from the device. Listeners are called on the event
+     * thread of the serial port as soon as a line is received, so they should not block.
+     *
+     * @param listener listener of received lines
+     */
+    public void subscribe(LineListener listener) {
+        subscribers.add(listener);
+    }
+
+    /**
+     * Unsubscribes specified listener from lines received from the device.
+     *
+     * @param listener listener of received lines
+     */
+    public void unsubscribe(LineListener listener) {
+        subscribers.remove(listener);
+    }
+
+    /**
+     * Returns metrics of commands sent by this ArduinoCOM. Metrics are always recorded, even when they are
+     * not exposed.
+     *
+     * @return metrics of commands
+     */
+    public SerialMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Exposes metrics of this ArduinoCOM over JMX as type=Serial,name=${portName}. The MBean is unregistered
+     * on close().
+     */
+    public void exposeMetrics() {
+        mbean = Jmx.register(metrics, "Serial", portName);
+    }
+
+    /**
+     * Stops the writer thread, cancels all commands that were not written yet and closes the serial port.
+     */
+    public void close() {
+        running = false;
+        Jmx.unregister(mbean);
+        timer.shutdownNow();
+        writer.interrupt();
         try {
-            Thread.sleep(milis);
+            writer.join(ACK_TIMEOUT_MILLIS);
         } catch (InterruptedException e) {
-            e.printStackTrace();
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (port.isOpened()) {
+                port.closePort();
+            }
+        } catch (SerialPortException e) {
+            log.error("Can't close serial port!", e);
         }
     }
 
-    private boolean isOn = false;
+    /**
+     * Cancels running fade and turns the LEDs on.
+     *
+     * @return future completed when the device turned the LEDs on
+     * @see #sendCommand(ArduinoCommand)
+     */
+    public CompletableFuture<String> turnLedOn() {
+        CompletableFuture<String> future;
+        synchronized (ledLock) {
+            cancelRunningFade();
+            isOn = true;
+            future = post(new PendingCommand(ArduinoCommand.LED_ON));
+        }
+        flush();
+        return future;
+    }
+
+    /**
+     * Cancels running fade and turns the LEDs off.
+     *
+     * @return future completed when the device turned the LEDs off
+     * @see #sendCommand(ArduinoCommand)
+     */
+    public CompletableFuture<String> turnLedOff() {
+        CompletableFuture<String> future;
+        synchronized (ledLock) {
+            cancelRunningFade();
+            isOn = false;
+            future = post(new PendingCommand(ArduinoCommand.LED_OFF));
+        }
+        flush();
+        return future;
+    }
+
+    /**
+     * Turns the LEDs on and fades them to the highest intensity in 25 seconds.
+     *
+     * @return future completed when the fade is done
+     * @see #fadeLedOn(Duration, FadeCurve)
+     */
+    public CompletableFuture<Void> fadeLedOn() {
+        return fadeLedOn(DEFAULT_FADE_DURATION, FadeCurve.LINEAR);
+    }
+
+    /**
+     * Fades the LEDs to the lowest intensity in 25 seconds and turns them off.
+     *
+     * @return future completed when the fade is done
+     * @see #fadeLedOff(Duration, FadeCurve)
+     */
+    public CompletableFuture<Void> fadeLedOff() {
+        return fadeLedOff(DEFAULT_FADE_DURATION, FadeCurve.LINEAR);
+    }
+
+    /**
+     * Turns the LEDs on and fades them to the highest intensity. Fade is executed by the device as one macro,
+     * this method does not block. Running fade is cancelled and the new fade starts from its current intensity.
+     *
+     * @param duration duration of fade from the lowest to the highest intensity, fade from the middle takes
+     *                 proportionally shorter time
+     * @param curve    curve of the fade
+     * @return future completed when the device executed the last step of the fade, or cancelled if the fade
+     * is cancelled
+     */
+    public CompletableFuture<Void> fadeLedOn(Duration duration, FadeCurve curve) {
+        return fadeTo(MAX_INTENSITY_LEVEL, duration, curve);
+    }
 
-    public void turnLedOn() {
-        sendCommand(ArduinoCommand.LED_ON);
+    /**
+     * Fades the LEDs to the lowest intensity and turns them off. Fade is executed by the device as one macro,
+     * this method does not block. Running fade is cancelled and the new fade starts from its current intensity.
+     *
+     * @param duration duration of fade from the highest to the lowest intensity, fade from the middle takes
+     *                 proportionally shorter time
+     * @param curve    curve of the fade
+     * @return future completed when the device executed the last step of the fade, or cancelled if the fade
+     * is cancelled
+     */
+    public CompletableFuture<Void> fadeLedOff(Duration duration, FadeCurve curve) {
+        return fadeTo(0, duration, curve);
     }
 
-    public void turnLedOff() {
-        sendCommand(ArduinoCommand.LED_OFF);
+    /**
+     * Cancels currently running fade, if any. The LEDs stay at the intensity reached so far.
+     */
+    public void cancelFade() {
+        synchronized (ledLock) {
+            cancelRunningFade();
+        }
+        flush();
+    }
+
+    // Cancels currently running fade, if any. Must hold ledLock.
+    private void cancelRunningFade() {
+        cancelRunningFade(System.nanoTime());
+    }
+
+    // Cancels running fade, if any, believing the level it reached at specified time. Must hold ledLock.
+    private void cancelRunningFade(long now) {
+        if (fade != null) {
+            fade.cancel(now);
+            fade = null;
+        }
+    }
+
+    // Adds specified command to outbox. Must hold ledLock, the command is sent by flush().
+    private CompletableFuture<String> post(PendingCommand pending) {
+        outbox.add(pending);
+        return pending.future;
+    }
+
+    // Puts commands from outbox to the queue. Must not hold ledLock, it may wait for free space in the queue.
+    private void flush() {
+        synchronized (outboxLock) {
+            PendingCommand pending;
+            while ((pending = outbox.poll()) != null) {
+                send(pending);
+            }
+        }
+    }
+
+    /**
+     * Cancels running fade and changes intensity of the LEDs from the believed level to specified level.
+     *
+     * @param level intensity level, from 0 to MAX_INTENSITY_LEVEL
+     * @return future completed when the device executed the last step, completed with null if the level
+     * does not change
+     */
+    public CompletableFuture<String> setIntensityLevel(int level) {
+        checkIntensityLevel(level);
+        CompletableFuture<String> future;
+        synchronized (ledLock) {
+            cancelRunningFade();
+            int delta = level - intensityLevel;
+            intensityLevel = level;
+            future = stepIntensity(delta);
+        }
+        flush();
+        return future;
     }
 
-    public void fadeLedOn() {
-        sendCommand(ArduinoCommand.LED_ON);
-        if (!isOn) {
-            for (int i = 0; i < 50; i++) {
-                sendCommand(ArduinoCommand.LED_INTENSITY_PLUS);
-                sleep(500);
+    /**
+     * Cancels running fade, lowers intensity of the LEDs by MAX_INTENSITY_LEVEL steps, so it surely is the lowest
+     * one, and then raises it to specified level. Used when the believed level may be wrong.
+     *
+     * @param level intensity level, from 0 to MAX_INTENSITY_LEVEL
+     * @return future completed when the device executed the last step
+     */
+    public CompletableFuture<String> calibrateIntensityLevel(int level) {
+        checkIntensityLevel(level);
+        CompletableFuture<String> down;
+        synchronized (ledLock) {
+            cancelRunningFade();
+            intensityLevel = level;
+            down = stepIntensity(-MAX_INTENSITY_LEVEL);
+        }
+        flush();
+        // Steps up are sent after steps down are executed, otherwise the queue would merge them. They are
+        // sent from timer, so the event thread of serial port never waits for free space in the queue.
+        return down.thenComposeAsync(reply -> {
+            CompletableFuture<String> up;
+            synchronized (ledLock) {
+                up = stepIntensity(level);
             }
+            flush();
+            return up;
+        }, timer);
+    }
+
+    // Posts specified number of intensity steps, waiting steps are merged by the queue. Must hold ledLock.
+    private CompletableFuture<String> stepIntensity(int delta) {
+        CompletableFuture<String> last = CompletableFuture.completedFuture(null);
+        ArduinoCommand step = delta > 0 ? ArduinoCommand.LED_INTENSITY_PLUS : ArduinoCommand.LED_INTENSITY_MINUS;
+        for (int i = 0; i < Math.abs(delta); i++) {
+            last = post(new PendingCommand(step));
         }
-        isOn = true;
+        return last;
     }
 
-    public void fadeLedOff() {
-        if (isOn) {
-            for (int i = 0; i < 50; i++) {
-                sendCommand(ArduinoCommand.LED_INTENSITY_MINUS);
-                sleep(500);
+    // Checks that specified intensity level is valid.
+    private static void checkIntensityLevel(int level) {
+        if (level < 0 || level > MAX_INTENSITY_LEVEL) {
+            throw new IllegalArgumentException("Intensity level must be from 0 to " + MAX_INTENSITY_LEVEL + "!");
+        }
+    }
+
+    /**
+     * Returns believed intensity level of the LEDs, from 0 to MAX_INTENSITY_LEVEL.
+     *
+     * @return believed intensity level
+     */
+    public int getIntensityLevel() {
+        synchronized (ledLock) {
+            return fade != null ? fade.levelAt(System.nanoTime()) : intensityLevel;
+        }
+    }
+
+    // Starts fade to specified intensity level.
+    private CompletableFuture<Void> fadeTo(int target, Duration duration, FadeCurve curve) {
+        CompletableFuture<Void> future;
+        synchronized (ledLock) {
+            // Fade is created before any state changes, so a fade that can't be sent changes nothing.
+            long now = System.nanoTime();
+            Fade next = new Fade(fade != null ? fade.levelAt(now) : intensityLevel, target, duration, curve);
+            cancelRunningFade(now);
+            if (target > 0 && !isOn) {
+                isOn = true;
+                post(new PendingCommand(ArduinoCommand.LED_ON));
+            }
+
+            // Fade without steps finishes, and clears the field, right away.
+            fade = next;
+            next.start();
+            future = next.future;
+        }
+        flush();
+        return future;
+    }
+
+    // Fade of the LEDs executed by the device as one macro.
+    private final class Fade {
+        private final int from;
+        private final int target;
+        // Macro of the fade and its command, null if there are no steps.
+        private final Macro macro;
+        private final PendingCommand command;
+        private final long startTime = System.nanoTime();
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        // Creates fade from specified level, duration is the duration of fade through all intensity steps.
+        // Throws IllegalArgumentException if the macro can't be sent to the device.
+        Fade(int from, int target, Duration duration, FadeCurve curve) {
+            this.from = from;
+            this.target = target;
+            int steps = Math.abs(target - from);
+            this.macro = steps == 0 ? null : fadeMacro(target > from ? ArduinoCommand.LED_INTENSITY_PLUS
+                    : ArduinoCommand.LED_INTENSITY_MINUS, steps,
+                    duration.multipliedBy(steps).dividedBy(MAX_INTENSITY_LEVEL), curve, protocol);
+            this.command = macro == null ? null : macroCommand(macro);
+        }
+
+        // Posts the macro to the device. Must hold ledLock.
+        private void start() {
+            if (macro == null) {
+                finish();
+                return;
+            }
+
+            // Completion is processed on timer, so the event thread of serial port never waits for ledLock.
+            post(command).whenCompleteAsync((reply, e) -> {
+                synchronized (ledLock) {
+                    // This fade was cancelled or replaced by another one.
+                    if (fade != this) {
+                        return;
+                    }
+                    if (e != null) {
+                        intensityLevel = levelAt(System.nanoTime());
+                        fade = null;
+                        future.completeExceptionally(e);
+                    } else {
+                        intensityLevel = target;
+                        finish();
+                    }
+                }
+                flush();
+            }, timer);
+        }
+
+        // Returns intensity level the device reached at specified time, estimated from the steps of the macro.
+        private int levelAt(long now) {
+            if (macro == null) {
+                return from;
+            }
+            int steps = macro.stepsAt(TimeUnit.NANOSECONDS.toMillis(now - startTime));
+            return target > from ? from + steps : from - steps;
+        }
+
+        // Finishes the fade, turning the LEDs off if needed. Must hold ledLock.
+        private void finish() {
+            fade = null;
+            if (target > 0 || !isOn) {
+                future.complete(null);
+                return;
+            }
+
+            isOn = false;
+            post(new PendingCommand(ArduinoCommand.LED_OFF)).whenComplete((reply, e) -> {
+                if (e != null) {
+                    future.completeExceptionally(e);
+                } else {
+                    future.complete(null);
+                }
+            });
+        }
+
+        // Cancels the fade at specified time and stops its macro on the device. Must hold ledLock.
+        private void cancel(long now) {
+            if (macro != null) {
+                intensityLevel = levelAt(now);
+                post(new PendingCommand(Macro.stop()));
             }
+            future.cancel(false);
         }
-        sendCommand(ArduinoCommand.LED_OFF);
-        isOn = false;
     }
 }
@@ -27,19 +27,37 @@
 package eu.matejkormuth.autohome.comm;
 
 public enum ArduinoCommand {
-    LED_ON("LED_ON"),
-    LED_OFF("LED_OFF"),
-    LED_COLOR_WHITE("LED_WHITE"),
-    LED_INTENSITY_PLUS("LED_IP"),
-    LED_INTENSITY_MINUS("LED_IM");
+    LED_ON("LED_ON", 0x01),
+    LED_OFF("LED_OFF", 0x02),
+    LED_COLOR_WHITE("LED_WHITE", 0x03),
+    LED_INTENSITY_PLUS("LED_IP", 0x04),
+    LED_INTENSITY_MINUS("LED_IM", 0x05),
+    /**
+     * Starts macro on the device, sent by ArduinoCOM.sendMacro().
+     *
+     * @see Macro
+     */
+    LED_MACRO("LED_MACRO", 0x06);
 
     private final String cmd;
+    private final byte opcode;
 
-    ArduinoCommand(String cmd) {
+    ArduinoCommand(String cmd, int opcode) {
         this.cmd = cmd;
+        this.opcode = (byte) opcode;
     }
 
     public String getCmd() {
         return cmd;
     }
+
+    /**
+     * Returns opcode of this command used in binary protocol.
+     *
+     * @return opcode of this command
+     * @see SerialProtocol#BINARY
+     */
+    public byte getOpcode() {
+        return opcode;
+    }
 }
@@ -0,0 +1,364 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.comm;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded queue of commands waiting to be written to serial port. Behaviour of full queue is specified
+ * by BackpressurePolicy.
+ * <p>
+ * Waiting commands are coalesced per target, so only the final intended state is written:
+ * <ul>
+ * <li>LED_ON and LED_OFF - the latest command wins and is written in place of the waiting one. If it is the same
+ * as the last power command acknowledged by the device and no other power command is being written, the waiting
+ * opposite command and the new one cancel out and nothing is written. Commands are never merged over intensity
+ * commands, so intensity always changes in the power state it was requested in.</li>
+ * <li>LED_INTENSITY_PLUS and LED_INTENSITY_MINUS - command is merged into the last waiting command if it is
+ * also an intensity command, with repeat count of their net delta. If the delta is zero, nothing is written.
+ * Commands are never merged over other commands, so intensity does not change before a power command
+ * that was queued earlier.</li>
+ * <li>LED_COLOR_WHITE - the same waiting command is not added again.</li>
+ * </ul>
+ * Futures of commands that were merged complete together with the command they were merged into. Futures of
+ * commands that cancelled out complete with null.
+ *
+ * @author Matej Kormuth
+ * @since 1.0.0
+ */
+final class CommandQueue {
+
+    // Maximum number of waiting commands.
+    private final int capacity;
+    // What to do when the queue is full.
+    private final BackpressurePolicy policy;
+
+    private final ArrayDeque<PendingCommand> commands;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    // Last power command acknowledged by the device or null if the power state of the device is unknown.
+    private ArduinoCommand acknowledgedPower = null;
+    // Number of power commands taken from the queue that were not acknowledged or failed yet.
+    private int powerInFlight = 0;
+    // Whether the next poll(long, TimeUnit) should return without waiting for its timeout.
+    private boolean woken = false;
+
+    CommandQueue(int capacity, BackpressurePolicy policy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive!");
+        }
+        this.capacity = capacity;
+        this.policy = policy;
+        this.commands = new ArrayDeque<>(capacity);
+    }
+
+    /**
+     * Adds specified command to the queue. When the queue is full, the backpressure policy is applied.
+     *
+     * @param command command to add
+     * @throws InterruptedException       if interrupted while waiting for free space
+     * @throws RejectedExecutionException if the queue is full and policy is FAIL
+     */
+    void offer(PendingCommand command) throws InterruptedException {
+        // Futures are completed outside of the lock, they may execute dependent actions.
+        List<Runnable> completions = new ArrayList<>(2);
+        lock.lockInterruptibly();
+        try {
+            if (coalesce(command, completions)) {
+                return;
+            }
+
+            while (commands.size() >= capacity) {
+                if (policy == BackpressurePolicy.BLOCK) {
+                    notFull.await();
+                } else if (policy == BackpressurePolicy.DROP_OLDEST) {
+                    PendingCommand dropped = commands.pollFirst();
+                    completions.add(() -> dropped.future.cancel(false));
+                } else {
+                    throw new RejectedExecutionException("Command queue is full, can't send " + command + "!");
+                }
+            }
+            commands.addLast(command);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+            for (int i = 0; i < completions.size(); i++) {
+                completions.get(i).run();
+            }
+        }
+    }
+
+    // Coalesces specified command with waiting commands. Returns true if the command should not be added
+    // to the queue. Must hold the lock.
+    private boolean coalesce(PendingCommand command, List<Runnable> completions) {
+        switch (command.command) {
+            case LED_ON:
+            case LED_OFF: {
+                PendingCommand previous = findWaitingPower();
+                if (previous == null) {
+                    return false;
+                }
+
+                if (previous.command != command.command && command.command == acknowledgedPower
+                        && powerInFlight == 0) {
+                    // Device is already in requested state.
+                    commands.remove(previous);
+                    notFull.signal();
+                    completions.add(() -> previous.future.complete(null));
+                    completions.add(() -> command.future.complete(null));
+                    return true;
+                }
+                // Waiting command keeps its position, so it is not written after commands queued later.
+                previous.command = command.command;
+                propagate(previous.future, command.future);
+                return true;
+            }
+            case LED_INTENSITY_PLUS:
+            case LED_INTENSITY_MINUS: {
+                PendingCommand previous = commands.peekLast();
+                if (previous == null || previous.future.isDone()
+                        || (previous.command != ArduinoCommand.LED_INTENSITY_PLUS
+                        && previous.command != ArduinoCommand.LED_INTENSITY_MINUS)) {
+                    return false;
+                }
+
+                propagate(previous.future, command.future);
+                int delta = delta(previous) + delta(command);
+                if (delta == 0) {
+                    commands.remove(previous);
+                    notFull.signal();
+                    completions.add(() -> previous.future.complete(null));
+                } else {
+                    previous.command = delta > 0 ? ArduinoCommand.LED_INTENSITY_PLUS
+                            : ArduinoCommand.LED_INTENSITY_MINUS;
+                    previous.repeat = Math.abs(delta);
+                }
+                return true;
+            }
+            case LED_COLOR_WHITE: {
+                PendingCommand previous = findWaiting(command.command, command.command);
+                if (previous == null) {
+                    return false;
+                }
+
+                propagate(previous.future, command.future);
+                return true;
+            }
+            default:
+                return false;
+        }
+    }
+
+    // Finds waiting command that is one of specified commands. Must hold the lock.
+    private PendingCommand findWaiting(ArduinoCommand first, ArduinoCommand second) {
+        for (PendingCommand pending : commands) {
+            // Cancelled commands are skipped by writer, so new commands can't be merged into them.
+            if ((pending.command == first || pending.command == second) && !pending.future.isDone()) {
+                return pending;
+            }
+        }
+        return null;
+    }
+
+    // Finds the last waiting power command, unless an intensity command waits after it. Must hold the lock.
+    private PendingCommand findWaitingPower() {
+        for (Iterator<PendingCommand> it = commands.descendingIterator(); it.hasNext(); ) {
+            PendingCommand pending = it.next();
+            // Cancelled commands are skipped by writer, so new commands can't be merged into them.
+            if (pending.future.isDone()) {
+                continue;
+            }
+            if (pending.command == ArduinoCommand.LED_ON || pending.command == ArduinoCommand.LED_OFF) {
+                return pending;
+            }
+            if (pending.command == ArduinoCommand.LED_INTENSITY_PLUS
+                    || pending.command == ArduinoCommand.LED_INTENSITY_MINUS) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    // Returns signed intensity change of specified command.
+    private static int delta(PendingCommand pending) {
+        return pending.command == ArduinoCommand.LED_INTENSITY_PLUS ? pending.repeat : -pending.repeat;
+    }
+
+    // Completes target future when the source future completes.
+    private static void propagate(CompletableFuture<String> source, CompletableFuture<String> target) {
+        source.whenComplete((reply, e) -> {
+            if (e != null) {
+                target.completeExceptionally(e);
+            } else {
+                target.complete(reply);
+            }
+        });
+    }
+
+    /**
+     * Removes and returns the oldest command, waiting if the queue is empty.
+     *
+     * @return oldest command in the queue
+     * @throws InterruptedException if interrupted while waiting
+     */
+    PendingCommand take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (commands.isEmpty()) {
+                notEmpty.await();
+            }
+            PendingCommand command = commands.pollFirst();
+            notFull.signal();
+            taken(command);
+            return command;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes and returns the oldest command, or returns null if the queue is empty.
+     *
+     * @return oldest command in the queue or null
+     */
+    PendingCommand poll() {
+        lock.lock();
+        try {
+            PendingCommand command = commands.pollFirst();
+            if (command != null) {
+                notFull.signal();
+                taken(command);
+            }
+            return command;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes and returns the oldest command, waiting up to specified time if the queue is empty.
+     *
+     * @param timeout how long to wait
+     * @param unit    unit of timeout
+     * @return oldest command in the queue or null if the queue is still empty or wakeUp() was called
+     * @throws InterruptedException if interrupted while waiting
+     */
+    PendingCommand poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (commands.isEmpty()) {
+                if (nanos <= 0 || woken) {
+                    woken = false;
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            woken = false;
+            PendingCommand command = commands.pollFirst();
+            notFull.signal();
+            taken(command);
+            return command;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Makes the current or the next poll(long, TimeUnit) return before its timeout, even if the queue is empty.
+     */
+    void wakeUp() {
+        lock.lock();
+        try {
+            woken = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Tracks taken power command until the device acknowledges it. Must hold the lock.
+    private void taken(PendingCommand command) {
+        if (command.command == ArduinoCommand.LED_ON || command.command == ArduinoCommand.LED_OFF) {
+            powerInFlight++;
+            // Future completes normally with the reply once the device acknowledged the command.
+            command.future.whenComplete((reply, e) -> resolved(command.command, e == null && reply != null));
+        }
+    }
+
+    // Remembers power state of the device after taken power command was acknowledged or failed.
+    private void resolved(ArduinoCommand power, boolean acknowledged) {
+        lock.lock();
+        try {
+            powerInFlight--;
+            // Failed command may or may not have been executed.
+            acknowledgedPower = acknowledged ? power : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes and returns all commands from the queue.
+     *
+     * @return array of all removed commands
+     */
+    PendingCommand[] clear() {
+        lock.lock();
+        try {
+            PendingCommand[] all = commands.toArray(new PendingCommand[commands.size()]);
+            commands.clear();
+            notFull.signalAll();
+            return all;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns number of commands waiting in the queue.
+     *
+     * @return number of waiting commands
+     */
+    int size() {
+        lock.lock();
+        try {
+            return commands.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
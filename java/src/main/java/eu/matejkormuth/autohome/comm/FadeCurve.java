@@ -0,0 +1,83 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.comm;
+
+/**
+ * Curve of LED fade. Curve maps elapsed fraction of fade duration (0 to 1) to fraction of intensity
+ * change (0 to 1) that should be done at that time. Curve must be non-decreasing, start at 0 and end at 1.
+ *
+ * @author Matej Kormuth
+ * @since 1.0.0
+ */
+@FunctionalInterface
+public interface FadeCurve {
+
+    /**
+     * Intensity changes evenly during the whole fade.
+     */
+    FadeCurve LINEAR = t -> t;
+    /**
+     * Intensity changes slowly at the start and quickly at the end.
+     */
+    FadeCurve EASE_IN = t -> t * t;
+    /**
+     * Intensity changes quickly at the start and slowly at the end.
+     */
+    FadeCurve EASE_OUT = t -> 1 - (1 - t) * (1 - t);
+    /**
+     * Intensity changes slowly at the start and at the end.
+     */
+    FadeCurve EASE_IN_OUT = t -> t * t * (3 - 2 * t);
+
+    /**
+     * Returns fraction of intensity change at specified elapsed fraction of fade duration.
+     *
+     * @param t elapsed fraction of fade duration, from 0 to 1
+     * @return fraction of intensity change, from 0 to 1
+     */
+    double apply(double t);
+
+    /**
+     * Returns elapsed fraction of fade duration at which specified fraction of intensity change is reached.
+     * This is inverse of apply(), computed by bisection.
+     *
+     * @param progress fraction of intensity change, from 0 to 1
+     * @return elapsed fraction of fade duration, from 0 to 1
+     */
+    default double timeOf(double progress) {
+        double low = 0, high = 1;
+        for (int i = 0; i < 32; i++) {
+            double mid = (low + high) / 2;
+            if (apply(mid) < progress) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        return high;
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.comm;
+
+import java.util.Arrays;
+
+/**
+ * Builds binary frames of the serial protocol. Frame has following format:
+ * <pre>
+ * SYNC (0xA5) | SEQ | LENGTH | PAYLOAD (LENGTH bytes) | CHECKSUM
+ * </pre>
+ * SEQ is sequence number of the frame, the device acknowledges the frame with it after all its commands are
+ * executed.
+ * Payload consists of one or more commands, each encoded as:
+ * <pre>
+ * OPCODE | ARG_LENGTH | ARGS (ARG_LENGTH bytes)
+ * </pre>
+ * Checksum is CRC-8 (polynomial 0x07) of SEQ, LENGTH and PAYLOAD bytes. The whole frame must fit into 64 byte
+ * receive buffer of the Arduino, so payload is limited to MAX_PAYLOAD bytes.
+ *
+ * @author Matej Kormuth
+ * @since 1.0.0
+ */
+final class FrameBuilder {
+
+    // Byte starting each frame. It is not printable ASCII character, so device can tell frames from text.
+    static final byte SYNC = (byte) 0xA5;
+    // Maximum length of payload.
+    static final int MAX_PAYLOAD = 48;
+    // Length of frame without payload.
+    private static final int OVERHEAD = 4;
+
+    private final byte[] buffer = new byte[MAX_PAYLOAD + OVERHEAD];
+    // Number of payload bytes written.
+    private int length = 0;
+    // Number of commands in the frame.
+    private int commands = 0;
+
+    /**
+     * Adds command with specified arguments to this frame.
+     *
+     * @param opcode opcode of the command
+     * @param args   arguments of the command
+     * @return true if the command was added, false if it does not fit into this frame
+     */
+    boolean add(byte opcode, byte... args) {
+        if (args.length > 255) {
+            throw new IllegalArgumentException("Too many arguments: " + args.length);
+        }
+        if (length + 2 + args.length > MAX_PAYLOAD) {
+            return false;
+        }
+
+        int pos = 3 + length;
+        buffer[pos++] = opcode;
+        buffer[pos++] = (byte) args.length;
+        System.arraycopy(args, 0, buffer, pos, args.length);
+        length += 2 + args.length;
+        commands++;
+        return true;
+    }
+
+    /**
+     * Returns whether this frame contains no commands.
+     *
+     * @return true if no commands were added
+     */
+    boolean isEmpty() {
+        return commands == 0;
+    }
+
+    /**
+     * Returns number of commands in this frame.
+     *
+     * @return number of commands
+     */
+    int size() {
+        return commands;
+    }
+
+    /**
+     * Returns complete frame with header and checksum.
+     *
+     * @param seq sequence number of the frame, from 0 to 255
+     * @return bytes of the frame
+     */
+    byte[] toByteArray(int seq) {
+        buffer[0] = SYNC;
+        buffer[1] = (byte) seq;
+        buffer[2] = (byte) length;
+        byte crc = 0;
+        for (int i = 1; i < length + 3; i++) {
+            crc = crc8(crc, buffer[i]);
+        }
+        buffer[length + 3] = crc;
+        return Arrays.copyOf(buffer, length + OVERHEAD);
+    }
+
+    /**
+     * Removes all commands from this frame, so it can be reused.
+     */
+    void reset() {
+        length = 0;
+        commands = 0;
+    }
+
+    // Updates CRC-8 (polynomial 0x07) with specified byte.
+    static byte crc8(byte crc, byte data) {
+        int c = (crc ^ data) & 0xFF;
+        for (int i = 0; i < 8; i++) {
+            c = (c & 0x80) != 0 ? (c << 1) ^ 0x07 : c << 1;
+        }
+        return (byte) c;
+    }
+}
@@ -0,0 +1,211 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.comm;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transmissions written to the device and not acknowledged yet. The window limits how many transmissions
+ * (and bytes, so they fit into receive buffer of the device) can be in flight at once.
+ * <p>
+ * The device executes transmissions in order of their sequence numbers and ignores transmissions that come
+ * out of order, so acknowledgement of one transmission also acknowledges all older ones. When the oldest
+ * transmission is not acknowledged in time, all transmissions in flight are retransmitted (go-back-N).
+ *
+ * @author Matej Kormuth
+ * @since 1.0.0
+ */
+final class InFlightWindow {
+
+    // Number of sequence numbers.
+    static final int SEQUENCE_SPACE = 256;
+
+    // Maximum number of transmissions in flight.
+    private final int capacity;
+    // Maximum number of bytes in flight.
+    private final int maxBytes;
+    // How long to wait for acknowledgement of transmission without IR codes, in nanoseconds.
+    private final long ackTimeout;
+    // How long it takes the device to send one IR code, in nanoseconds.
+    private final long sendDuration;
+
+    private final ArrayDeque<Transmission> inFlight;
+    // Sequence number of the next transmission.
+    private int nextSeq = 0;
+    // Number of bytes in flight.
+    private int bytes = 0;
+    // Number of IR codes the device has to send before all transmissions in flight are acknowledged.
+    private int sends = 0;
+
+    InFlightWindow(int capacity, int maxBytes, long ackTimeout, long sendDuration, TimeUnit unit) {
+        if (capacity <= 0 || capacity >= SEQUENCE_SPACE / 2) {
+            throw new IllegalArgumentException("Invalid window size: " + capacity);
+        }
+        this.capacity = capacity;
+        this.maxBytes = maxBytes;
+        this.ackTimeout = unit.toNanos(ackTimeout);
+        this.sendDuration = unit.toNanos(sendDuration);
+        this.inFlight = new ArrayDeque<>(capacity);
+    }
+
+    /**
+     * Returns sequence number for the next transmission.
+     *
+     * @return sequence number from 0 to 255
+     */
+    synchronized int nextSeq() {
+        int seq = nextSeq;
+        nextSeq = (nextSeq + 1) % SEQUENCE_SPACE;
+        return seq;
+    }
+
+    /**
+     * Waits until transmission of specified length fits into the window, or until the oldest transmission
+     * in flight expires. Transmission longer than the byte limit of the window never fits.
+     *
+     * @param length length of the transmission in bytes
+     * @return true if the transmission fits, false if the oldest transmission expired
+     * @throws InterruptedException     if interrupted while waiting
+     * @throws IllegalArgumentException if the transmission is longer than the byte limit of the window
+     */
+    synchronized boolean awaitSpace(int length) throws InterruptedException {
+        if (length > maxBytes) {
+            throw new IllegalArgumentException("Transmission of " + length + " bytes is longer than " + maxBytes
+                    + " bytes!");
+        }
+        while (!inFlight.isEmpty() && (inFlight.size() >= capacity || bytes + length > maxBytes)) {
+            long remaining = untilExpiry(System.nanoTime());
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Adds specified transmission that was just written.
+     *
+     * @param transmission written transmission
+     * @param now          current time (System.nanoTime())
+     */
+    synchronized void add(Transmission transmission, long now) {
+        inFlight.addLast(transmission);
+        bytes += transmission.bytes.length;
+        sends += transmission.sends;
+        transmission.written = now;
+        transmission.deadline = now + ackTimeout + sends * sendDuration;
+        transmission.attempts = 1;
+    }
+
+    /**
+     * Removes transmission with specified sequence number and all older transmissions. Acknowledgement of
+     * unknown sequence number (for example repeated acknowledgement of retransmitted transmission) is ignored.
+     *
+     * @param seq acknowledged sequence number
+     * @return acknowledged transmissions from the oldest, empty if the sequence number is not in flight
+     */
+    synchronized List<Transmission> acknowledge(int seq) {
+        int position = 0;
+        for (Iterator<Transmission> it = inFlight.iterator(); it.hasNext(); position++) {
+            if (it.next().seq == seq) {
+                List<Transmission> acknowledged = new ArrayList<>(position + 1);
+                for (int i = 0; i <= position; i++) {
+                    Transmission transmission = inFlight.pollFirst();
+                    bytes -= transmission.bytes.length;
+                    sends -= transmission.sends;
+                    acknowledged.add(transmission);
+                }
+                notifyAll();
+                return acknowledged;
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Returns all transmissions in flight if the oldest one was not acknowledged in time, so they can be
+     * written again. Their deadlines are extended and their attempts incremented.
+     *
+     * @param now current time (System.nanoTime())
+     * @return transmissions to write again from the oldest, empty if the oldest did not expire
+     */
+    synchronized Transmission[] expired(long now) {
+        if (untilExpiry(now) > 0) {
+            return new Transmission[0];
+        }
+
+        int cumulative = 0;
+        for (Transmission transmission : inFlight) {
+            cumulative += transmission.sends;
+            transmission.written = now;
+            transmission.deadline = now + ackTimeout + cumulative * sendDuration;
+            transmission.attempts++;
+        }
+        return inFlight.toArray(new Transmission[inFlight.size()]);
+    }
+
+    /**
+     * Returns nanoseconds until the oldest transmission expires.
+     *
+     * @param now current time (System.nanoTime())
+     * @return nanoseconds until expiry, zero or negative if expired, Long.MAX_VALUE if nothing is in flight
+     */
+    synchronized long untilExpiry(long now) {
+        Transmission oldest = inFlight.peekFirst();
+        return oldest == null ? Long.MAX_VALUE : oldest.deadline - now;
+    }
+
+    /**
+     * Removes and returns all transmissions in flight and starts sequence numbers from zero.
+     *
+     * @return removed transmissions from the oldest
+     */
+    synchronized Transmission[] clear() {
+        Transmission[] all = inFlight.toArray(new Transmission[inFlight.size()]);
+        inFlight.clear();
+        bytes = 0;
+        sends = 0;
+        nextSeq = 0;
+        notifyAll();
+        return all;
+    }
+
+    /**
+     * Returns number of transmissions in flight.
+     *
+     * @return number of transmissions in flight
+     */
+    synchronized int size() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.comm;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splits bytes received from serial port to lines. Bytes are copied to a ring buffer that is reused for all
+ * lines and each complete line is passed to the listener as a view of the buffer, so the reader does not
+ * allocate any objects. Lines are terminated by LF, CR before LF is ignored and empty lines are skipped.
+ * Line longer than the buffer is passed in parts.
+ * <p>
+ * Not thread-safe, bytes must be fed from one thread.
+ *
+ * @author Matej Kormuth
+ * @since 1.0.0
+ */
+final class LineReader {
+
+    private final byte[] buffer;
+    private final int mask;
+    // Position of the first byte of the current line. Positions only grow, index is position & mask.
+    private int start = 0;
+    // Position after the last byte of the current line.
+    private int end = 0;
+
+    private final LineListener listener;
+    private final LineView view = new LineView();
+
+    /**
+     * Creates new reader with buffer of specified capacity.
+     *
+     * @param capacity capacity of the buffer, power of two
+     * @param listener listener of lines
+     */
+    LineReader(int capacity, LineListener listener) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be power of two!");
+        }
+        this.buffer = new byte[capacity];
+        this.mask = capacity - 1;
+        this.listener = listener;
+    }
+
+    // Processes specified received bytes.
+    void feed(byte[] bytes, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            byte b = bytes[i];
+            if (b == '\n') {
+                // Strip CR of CRLF.
+                if (end != start && buffer[(end - 1) & mask] == '\r') {
+                    end--;
+                }
+                deliver();
+            } else {
+                if (end - start == buffer.length) {
+                    // Line does not fit into the buffer.
+                    deliver();
+                }
+                buffer[end++ & mask] = b;
+            }
+        }
+    }
+
+    // Processes specified received bytes.
+    void feed(byte[] bytes) {
+        feed(bytes, 0, bytes.length);
+    }
+
+    // Passes current line to the listener and starts new line.
+    private void deliver() {
+        if (end != start) {
+            view.set(start, end - start);
+            listener.onLine(view);
+        }
+        start = end;
+    }
+
+    // Returns number of bytes of incomplete line.
+    int pending() {
+        return end - start;
+    }
+
+    // Line in the ring buffer.
+    private final class LineView implements CharSequence {
+        private int offset;
+        private int length;
+
+        void set(int offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", length: " + length);
+            }
+            return (char) (buffer[(offset + index) & mask] & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            int first = offset & mask;
+            if (first + length <= buffer.length) {
+                return new String(buffer, first, length, StandardCharsets.ISO_8859_1);
+            }
+            // Line wraps around the end of the buffer.
+            byte[] bytes = new byte[length];
+            int head = buffer.length - first;
+            System.arraycopy(buffer, first, bytes, 0, head);
+            System.arraycopy(buffer, 0, bytes, head, length - head);
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.comm;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Macro executed by the device on its own timer: the step command is repeated in segments, each segment
+ * repeats it specified number of times with specified interval. Host sends only one command and timing of the
+ * steps does not depend on it. Device runs one macro at a time, new macro aborts the running one.
+ * <p>
+ * Macro is encoded as step opcode followed by segments, each segment as COUNT | INTERVAL (2 bytes, little
+ * endian, in milliseconds). In text protocol it is encoded as "LED_MACRO STEP COUNT INTERVAL ...".
+ *
+ * @author Matej Kormuth
+ * @since 1.0.0
+ */
+public final class Macro {
+
+    /**
+     * Maximum number of segments, so the macro fits into one binary frame.
+     */
+    public static final int MAX_SEGMENTS = 15;
+    /**
+     * Maximum interval between two steps in milliseconds.
+     */
+    public static final int MAX_INTERVAL_MILLIS = 0xFFFF;
+
+    // Command repeated by the macro, null for macro that only stops the running one.
+    private final ArduinoCommand step;
+    // Number of steps of each segment.
+    private final int[] counts = new int[MAX_SEGMENTS];
+    // Interval between steps of each segment in milliseconds.
+    private final int[] intervals = new int[MAX_SEGMENTS];
+    private int segments = 0;
+
+    /**
+     * Creates new macro that repeats specified command. Segments are added by repeat().
+     *
+     * @param step command repeated by the macro
+     */
+    public Macro(ArduinoCommand step) {
+        if (step == null || step == ArduinoCommand.LED_MACRO) {
+            throw new IllegalArgumentException("Invalid step of macro: " + step);
+        }
+        this.step = step;
+    }
+
+    // Creates macro without steps.
+    private Macro() {
+        this.step = null;
+    }
+
+    /**
+     * Returns macro that only stops macro running on the device.
+     *
+     * @return macro without steps
+     */
+    public static Macro stop() {
+        return new Macro();
+    }
+
+    /**
+     * Returns macro that changes intensity in specified number of steps. Steps are timed by the curve, the curve
+     * is approximated by at most MAX_SEGMENTS segments with constant interval.
+     *
+     * @param step     command of one step
+     * @param steps    number of steps
+     * @param duration duration of the whole fade
+     * @param curve    curve of the fade
+     * @return macro of the fade
+     */
+    public static Macro fade(ArduinoCommand step, int steps, Duration duration, FadeCurve curve) {
+        return fade(step, steps, duration, curve, MAX_SEGMENTS);
+    }
+
+    /**
+     * Returns macro that changes intensity in specified number of steps. Steps are timed by the curve, the curve
+     * is approximated by at most specified number of segments with constant interval. Less segments make the
+     * macro shorter, but approximate the curve worse.
+     *
+     * @param step     command of one step
+     * @param steps    number of steps
+     * @param duration duration of the whole fade
+     * @param curve    curve of the fade
+     * @param segments maximum number of segments, from 1 to MAX_SEGMENTS
+     * @return macro of the fade
+     */
+    public static Macro fade(ArduinoCommand step, int steps, Duration duration, FadeCurve curve, int segments) {
+        if (segments < 1 || segments > MAX_SEGMENTS) {
+            throw new IllegalArgumentException("Number of segments must be from 1 to " + MAX_SEGMENTS + "!");
+        }
+        Macro macro = new Macro(step);
+        long millis = duration.toMillis();
+        // Number of steps in one segment.
+        int perSegment = (steps + segments - 1) / segments;
+        long previous = 0;
+        for (int done = 0; done < steps; done += perSegment) {
+            int count = Math.min(perSegment, steps - done);
+            // Segments end exactly at time of their last step, so rounding errors do not accumulate.
+            long end = Math.round(millis * curve.timeOf((done + count) / (double) steps));
+            macro.repeat(count, Duration.ofMillis((end - previous) / count));
+            previous += (end - previous) / count * count;
+        }
+        return macro;
+    }
+
+    /**
+     * Adds segment that repeats the step specified number of times. First step of the segment is executed after
+     * the interval. Segment of the same interval as the previous one is merged into it.
+     *
+     * @param count    number of steps
+     * @param interval interval before each step, at most MAX_INTERVAL_MILLIS
+     * @return this macro
+     */
+    public Macro repeat(int count, Duration interval) {
+        if (step == null) {
+            throw new IllegalStateException("Stop macro can't have steps!");
+        }
+        long millis = interval.toMillis();
+        if (count <= 0 || millis < 0 || millis > MAX_INTERVAL_MILLIS) {
+            throw new IllegalArgumentException("Invalid segment: " + count + "x" + millis + "ms");
+        }
+
+        while (count > 0) {
+            if (segments > 0 && intervals[segments - 1] == millis && counts[segments - 1] < 255) {
+                int merged = Math.min(count, 255 - counts[segments - 1]);
+                counts[segments - 1] += merged;
+                count -= merged;
+                continue;
+            }
+            if (segments == MAX_SEGMENTS) {
+                throw new IllegalArgumentException("Macro can have at most " + MAX_SEGMENTS + " segments!");
+            }
+            counts[segments] = Math.min(count, 255);
+            intervals[segments] = (int) millis;
+            count -= counts[segments];
+            segments++;
+        }
+        return this;
+    }
+
+    /**
+     * Returns command repeated by this macro.
+     *
+     * @return step command or null if this macro only stops the running one
+     */
+    public ArduinoCommand getStep() {
+        return step;
+    }
+
+    /**
+     * Returns total number of steps of this macro.
+     *
+     * @return number of steps
+     */
+    public int getSteps() {
+        int steps = 0;
+        for (int i = 0; i < segments; i++) {
+            steps += counts[i];
+        }
+        return steps;
+    }
+
+    /**
+     * Returns duration from start of this macro to its last step.
+     *
+     * @return duration of this macro
+     */
+    public Duration getDuration() {
+        long millis = 0;
+        for (int i = 0; i < segments; i++) {
+            millis += (long) counts[i] * intervals[i];
+        }
+        return Duration.ofMillis(millis);
+    }
+
+    /**
+     * Returns number of steps executed in specified time from start of this macro.
+     *
+     * @param elapsedMillis milliseconds elapsed from start
+     * @return number of executed steps
+     */
+    int stepsAt(long elapsedMillis) {
+        int steps = 0;
+        for (int i = 0; i < segments; i++) {
+            for (int j = 0; j < counts[i]; j++) {
+                elapsedMillis -= intervals[i];
+                if (elapsedMillis < 0) {
+                    return steps;
+                }
+                steps++;
+            }
+        }
+        return steps;
+    }
+
+    // Returns arguments of the macro command in binary protocol.
+    byte[] toArgs() {
+        byte[] args = new byte[1 + 3 * segments];
+        args[0] = step == null ? 0 : step.getOpcode();
+        for (int i = 0; i < segments; i++) {
+            args[1 + 3 * i] = (byte) counts[i];
+            args[2 + 3 * i] = (byte) intervals[i];
+            args[3 + 3 * i] = (byte) (intervals[i] >> 8);
+        }
+        return args;
+    }
+
+    // Returns the macro command in text protocol.
+    String toText() {
+        StringBuilder text = new StringBuilder(ArduinoCommand.LED_MACRO.getCmd());
+        if (step != null) {
+            text.append(' ').append(step.getCmd());
+        }
+        for (int i = 0; i < segments; i++) {
+            text.append(' ').append(counts[i]).append(' ').append(intervals[i]);
+        }
+        return text.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "Macro{" +
+                "step=" + step +
+                ", counts=" + Arrays.toString(Arrays.copyOf(counts, segments)) +
+                ", intervals=" + Arrays.toString(Arrays.copyOf(intervals, segments)) +
+                '}';
+    }
+}
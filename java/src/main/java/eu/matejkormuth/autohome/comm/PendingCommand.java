@@ -0,0 +1,72 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.comm;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Command waiting in the command queue together with future that is completed when the command is processed.
+ *
+ * @author Matej Kormuth
+ * @since 1.0.0
+ */
+final class PendingCommand {
+
+    // Command to send. Can be changed by coalescing while the command is in the queue.
+    ArduinoCommand command;
+    // How many times should be the command sent. Can be changed by coalescing while the command is in the queue.
+    int repeat = 1;
+    // Future completed with reply of the device.
+    final CompletableFuture<String> future;
+    // Time (System.nanoTime()) when the command was sent, used to measure its latency.
+    final long created;
+    // Macro started by LED_MACRO command, otherwise null.
+    final Macro macro;
+
+    PendingCommand(ArduinoCommand command) {
+        this(command, null);
+    }
+
+    PendingCommand(Macro macro) {
+        this(ArduinoCommand.LED_MACRO, macro);
+    }
+
+    private PendingCommand(ArduinoCommand command, Macro macro) {
+        this.command = command;
+        this.macro = macro;
+        this.future = new CompletableFuture<>();
+        this.created = System.nanoTime();
+    }
+
+    @Override
+    public String toString() {
+        if (macro != null) {
+            return macro.toString();
+        }
+        return repeat == 1 ? command.toString() : command + "x" + repeat;
+    }
+}
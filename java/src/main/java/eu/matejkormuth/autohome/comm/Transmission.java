@@ -0,0 +1,68 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.comm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sequence-numbered unit written to the device: one line in text protocol or one frame in binary protocol.
+ * The device acknowledges it with its sequence number when all of its commands are executed.
+ *
+ * @author Matej Kormuth
+ * @since 1.0.0
+ */
+final class Transmission {
+
+    // Sequence number of this transmission, from 0 to 255.
+    final int seq;
+    // Bytes written to serial port, kept for retransmission.
+    final byte[] bytes;
+    // Number of IR codes the device sends while executing this transmission.
+    final int sends;
+    // Commands completed by acknowledgement of this transmission. Command that spans multiple transmissions
+    // is completed by the last one.
+    final List<PendingCommand> commands = new ArrayList<>(2);
+
+    // Time (System.nanoTime()) of the last write. Guarded by InFlightWindow.
+    long written;
+    // Time (System.nanoTime()) until which the acknowledgement is expected. Guarded by InFlightWindow.
+    long deadline;
+    // Number of times this transmission was written. Guarded by InFlightWindow.
+    int attempts;
+
+    Transmission(int seq, byte[] bytes, int sends) {
+        this.seq = seq;
+        this.bytes = bytes;
+        this.sends = sends;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + seq + commands;
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.conditions;
+
+import eu.matejkormuth.autohome.api.PushCondition;
+import eu.matejkormuth.autohome.api.StateProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Base class of push conditions. Subclasses call publish() with the current value and subscribers are
+ * notified only when the value differs from the last published one. Concurrent publishers are serialized, so
+ * subscribers receive the changes in the order they were published and the last received value is the last
+ * published one.
+ *
+ * @author Matej Kormuth
+ * @since 1.0.0
+ */
+public abstract class AbstractPushCondition implements PushCondition {
+
+    // Logger.
+    private static final Logger log = LoggerFactory.getLogger(AbstractPushCondition.class);
+    // Value of last published state before anything was published.
+    private static final int UNKNOWN = -1;
+
+    private final List<StateProcessor> subscribers = new CopyOnWriteArrayList<>();
+    // Held while a value is published, so the next one is not published before subscribers received it.
+    private final Object publishLock = new Object();
+    // Last published state (0 = false, 1 = true). Guarded by publishLock.
+    private int lastPublished = UNKNOWN;
+
+    @Override
+    public void subscribe(StateProcessor listener) {
+        subscribers.add(listener);
+    }
+
+    @Override
+    public void unsubscribe(StateProcessor listener) {
+        subscribers.remove(listener);
+    }
+
+    /**
+     * Notifies all subscribers about specified value if it differs from the last published value. Waits until
+     * the previous value is delivered, so subscribers should not block.
+     *
+     * @param value current value of this condition
+     */
+    protected void publish(boolean value) {
+        int state = value ? 1 : 0;
+        synchronized (publishLock) {
+            if (lastPublished == state) {
+                return;
+            }
+            lastPublished = state;
+
+            for (StateProcessor subscriber : subscribers) {
+                try {
+                    subscriber.onStateUpdated(value);
+                } catch (Exception e) {
+                    log.error("Can't notify {} because {}!", subscriber, e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.conditions;
+
+import eu.matejkormuth.autohome.api.Condition;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Condition that remembers the result of another condition for specified time. Callers that check this
+ * condition while the result is fresh get the remembered result. When the result expires, only one caller
+ * checks the underlying condition and other concurrent callers wait for its result instead of starting
+ * their own check. Exception thrown by the underlying condition is remembered too, but only for at most
+ * one second, so callers that waited for the failed check fail with it instead of repeating the check.
+ *
+ * @author Matej Kormuth
+ * @see ConditionCache
+ * @since 1.0.0
+ */
+public final class CachedCondition implements Condition {
+
+    // Longest time for which a failure of the underlying condition is remembered.
+    private static final long FAILURE_TTL = TimeUnit.SECONDS.toNanos(1);
+
+    private final Condition condition;
+    private final long ttl;
+    // Lock held by the caller that is currently checking the underlying condition.
+    private final Object lock = new Object();
+
+    private volatile boolean value;
+    // Exception thrown by the last check or null if the last check succeeded.
+    private volatile RuntimeException failure;
+    // Time (System.nanoTime()) when the value expires. Zero when there is no value yet.
+    private volatile long expiresAt = 0;
+
+    /**
+     * Creates new cached condition.
+     *
+     * @param condition condition to cache results of
+     * @param ttl       how long the result is remembered
+     */
+    public CachedCondition(Condition condition, Duration ttl) {
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("Time to live must be positive!");
+        }
+        this.condition = condition;
+        this.ttl = ttl.toNanos();
+    }
+
+    @Override
+    public boolean check() {
+        if (isFresh(System.nanoTime())) {
+            return remembered();
+        }
+
+        synchronized (lock) {
+            // Other caller might have checked the condition while we were waiting for the lock.
+            if (isFresh(System.nanoTime())) {
+                return remembered();
+            }
+
+            boolean result;
+            try {
+                result = condition.check();
+            } catch (RuntimeException e) {
+                failure = e;
+                expiresAt = System.nanoTime() + Math.min(ttl, FAILURE_TTL);
+                throw e;
+            }
+            value = result;
+            failure = null;
+            // Written after value, so readers that see the new expiration also see the new value. The result
+            // is fresh since the check returned, slow check does not shorten its lifetime.
+            expiresAt = System.nanoTime() + ttl;
+            return result;
+        }
+    }
+
+    // Returns the remembered value or throws the remembered failure.
+    private boolean remembered() {
+        RuntimeException e = failure;
+        if (e != null) {
+            throw e;
+        }
+        return value;
+    }
+
+    // Returns whether the remembered value can be used at specified time.
+    private boolean isFresh(long now) {
+        long expires = expiresAt;
+        return expires != 0 && now - expires < 0;
+    }
+
+    /**
+     * Forgets the remembered result, so the next check will check the underlying condition.
+     */
+    public void invalidate() {
+        expiresAt = 0;
+    }
+
+    /**
+     * Returns the underlying condition.
+     *
+     * @return the underlying condition
+     */
+    public Condition getCondition() {
+        return condition;
+    }
+
+    @Override
+    public String toString() {
+        return "CachedCondition{" +
+                "condition=" + condition +
+                ", ttl=" + (ttl / 1_000_000) + "ms" +
+                '}';
+    }
+}
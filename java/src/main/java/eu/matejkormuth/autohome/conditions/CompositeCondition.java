@@ -0,0 +1,225 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.conditions;
+
+import eu.matejkormuth.autohome.api.Condition;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Condition that combines multiple conditions with logical and / or. Evaluation short-circuits on the first
+ * decisive result (false for and, true for or). Each operand keeps moving averages of how long its check takes
+ * and how often its result is decisive, and operands are periodically reordered so that cheap and decisive
+ * operands are checked first. For example a numeric check runs before a network probe. Operands that were
+ * never checked are moved to the front by the next reordering, so they get measured, and the least recently
+ * checked operand is checked first once in a while, so statistics of skipped operands do not get stale.
+ * <p>
+ * Statistics are updated without locking, so concurrent checks may lose some samples. They are only used
+ * to pick the order, which never changes the result of the condition.
+ *
+ * @author Matej Kormuth
+ * @since 1.0.0
+ */
+public final class CompositeCondition implements Condition {
+
+    // Weight of new sample in moving averages.
+    private static final double ALPHA = 0.2D;
+    // Operands are reordered after this many checks.
+    private static final int REORDER_EVERY = 16;
+    // Least recently checked operand is checked first once in this many checks.
+    private static final int SAMPLE_EVERY = 64;
+    // Lower bound of decisive probability, so operands that are never decisive are not divided by zero.
+    private static final double MIN_PROBABILITY = 0.01D;
+
+    // Whether all operands must be true (and) or any operand must be true (or).
+    private final boolean all;
+    private final Operand[] operands;
+    // Current order of evaluation. Replaced as a whole when reordering.
+    private volatile Operand[] order;
+    private final AtomicInteger checks = new AtomicInteger();
+
+    private CompositeCondition(boolean all, List<Condition> conditions) {
+        if (conditions.isEmpty()) {
+            throw new IllegalArgumentException("Composite condition needs at least one condition!");
+        }
+        this.all = all;
+        this.operands = new Operand[conditions.size()];
+        for (int i = 0; i < operands.length; i++) {
+            operands[i] = new Operand(conditions.get(i));
+        }
+        this.order = operands.clone();
+    }
+
+    /**
+     * Creates condition which is true when all of specified conditions are true. Operands which are
+     * themselves all-of composite conditions are flattened.
+     *
+     * @param conditions conditions to combine
+     * @return new composite condition
+     */
+    public static CompositeCondition allOf(Condition... conditions) {
+        return new CompositeCondition(true, flatten(true, conditions));
+    }
+
+    /**
+     * Creates condition which is true when any of specified conditions is true. Operands which are
+     * themselves any-of composite conditions are flattened.
+     *
+     * @param conditions conditions to combine
+     * @return new composite condition
+     */
+    public static CompositeCondition anyOf(Condition... conditions) {
+        return new CompositeCondition(false, flatten(false, conditions));
+    }
+
+    // Collects operands of nested composite conditions of the same kind into one list.
+    private static List<Condition> flatten(boolean all, Condition[] conditions) {
+        List<Condition> result = new ArrayList<>(conditions.length);
+        for (Condition condition : conditions) {
+            if (condition == null) {
+                throw new NullPointerException("condition");
+            }
+            if (condition instanceof CompositeCondition && ((CompositeCondition) condition).all == all) {
+                for (Operand operand : ((CompositeCondition) condition).operands) {
+                    result.add(operand.condition);
+                }
+            } else {
+                result.add(condition);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean check() {
+        int check = checks.incrementAndGet();
+        Operand[] current = order;
+        Operand first = check % SAMPLE_EVERY == 0 ? leastRecentlyChecked(current) : null;
+        boolean result = all;
+        if (first != null && first.check(all, check) != all) {
+            result = !all;
+        } else {
+            for (Operand operand : current) {
+                if (operand != first && operand.check(all, check) != all) {
+                    result = !all;
+                    break;
+                }
+            }
+        }
+
+        if (check % REORDER_EVERY == 0) {
+            reorder();
+        }
+        return result;
+    }
+
+    // Returns operand that was not checked for the longest time.
+    private static Operand leastRecentlyChecked(Operand[] operands) {
+        Operand result = operands[0];
+        for (Operand operand : operands) {
+            if (operand.lastChecked < result.lastChecked) {
+                result = operand;
+            }
+        }
+        return result;
+    }
+
+    // Sorts operands by expected cost of reaching a decisive result.
+    private synchronized void reorder() {
+        Operand[] sorted = operands.clone();
+        // Statistics may change while sorting, so sort by a snapshot. Operands without samples go first.
+        for (Operand operand : sorted) {
+            operand.rank = operand.samples == 0 ? 0
+                    : operand.cost / Math.max(operand.decisive, MIN_PROBABILITY);
+        }
+        Arrays.sort(sorted, Comparator.comparingDouble(o -> o.rank));
+        order = sorted;
+    }
+
+    /**
+     * Returns conditions of this composite condition in current order of evaluation.
+     *
+     * @return conditions in order of evaluation
+     */
+    public List<Condition> getOrder() {
+        Operand[] current = order;
+        List<Condition> result = new ArrayList<>(current.length);
+        for (Operand operand : current) {
+            result.add(operand.condition);
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    @Override
+    public String toString() {
+        return "CompositeCondition{" +
+                (all ? "all" : "any") +
+                ", order=" + Arrays.toString(order) +
+                '}';
+    }
+
+    // Operand with its statistics.
+    private static final class Operand {
+        private final Condition condition;
+        // Moving average of check time in nanoseconds. Starts with the first sample.
+        private volatile double cost = 0;
+        // Moving average of probability that the result is decisive. Starts as unknown.
+        private volatile double decisive = 0.5D;
+        // Number of checks of this operand.
+        private volatile int samples = 0;
+        // Number of the last check of composite condition in which this operand was checked.
+        private volatile int lastChecked = 0;
+        // Snapshot of cost / decisive used while sorting.
+        private double rank;
+
+        private Operand(Condition condition) {
+            this.condition = condition;
+        }
+
+        private boolean check(boolean all, int check) {
+            long start = System.nanoTime();
+            boolean result = condition.check();
+            long took = System.nanoTime() - start;
+
+            cost = samples == 0 ? took : cost + ALPHA * (took - cost);
+            decisive += ALPHA * ((result != all ? 1 : 0) - decisive);
+            samples++;
+            lastChecked = check;
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return condition + String.format("(%.0fns, %.2f)", cost, decisive);
+        }
+    }
+}
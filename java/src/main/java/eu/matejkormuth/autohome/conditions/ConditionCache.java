@@ -0,0 +1,115 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.conditions;
+
+import eu.matejkormuth.autohome.api.Condition;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Registry of cached conditions shared by multiple Whens. When several rules depend on the same device,
+ * they should get the condition from one cache, so the device is checked once per time to live instead of
+ * once per rule.
+ * <pre>
+ * ConditionCache cache = new ConditionCache(Duration.ofSeconds(5));
+ * executor.when(cache.get("phone", () -&gt; Conditions.isReachable("192.168.0.14"))).isTrue(...);
+ * executor.when(cache.get("phone", () -&gt; Conditions.isReachable("192.168.0.14"))).isFalse(...);
+ * </pre>
+ *
+ * @author Matej Kormuth
+ * @see CachedCondition
+ * @since 1.0.0
+ */
+public final class ConditionCache {
+
+    private final Duration ttl;
+    // Cached conditions by key or by the condition itself.
+    private final ConcurrentMap<Object, CachedCondition> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Creates new cache which remembers results for specified time.
+     *
+     * @param ttl how long the results are remembered
+     */
+    public ConditionCache(Duration ttl) {
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("Time to live must be positive!");
+        }
+        this.ttl = ttl;
+    }
+
+    /**
+     * Returns cached condition for specified condition. Subsequent calls with the same condition instance
+     * return the same cached condition.
+     *
+     * @param condition condition to cache results of
+     * @return shared cached condition
+     */
+    public CachedCondition get(Condition condition) {
+        return cache.computeIfAbsent(condition, c -> new CachedCondition(condition, ttl));
+    }
+
+    /**
+     * Returns cached condition registered under specified key. If there is no such condition, the factory
+     * is called to create the underlying condition. Use this when each rule creates its own condition
+     * instance for the same device.
+     *
+     * @param key     key of the condition, for example hostname
+     * @param factory factory of the underlying condition
+     * @return shared cached condition
+     */
+    public CachedCondition get(String key, Supplier<? extends Condition> factory) {
+        return cache.computeIfAbsent(key, k -> new CachedCondition(factory.get(), ttl));
+    }
+
+    /**
+     * Forgets all remembered results, so the next check of each condition will check its underlying condition.
+     */
+    public void invalidateAll() {
+        cache.values().forEach(CachedCondition::invalidate);
+    }
+
+    /**
+     * Returns number of conditions in this cache.
+     *
+     * @return number of conditions
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    @Override
+    public String toString() {
+        return "ConditionCache{" +
+                "ttl=" + ttl +
+                ", size=" + cache.size() +
+                '}';
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.conditions;
+
+import eu.matejkormuth.autohome.api.Condition;
+
+import java.util.function.DoubleSupplier;
+
+/**
+ * Numeric condition with separate on and off thresholds. The condition becomes true when the value crosses
+ * the on threshold and stays true until the value crosses the off threshold back. Value hovering between
+ * the thresholds does not change the result, so relays controlled by this condition do not flip on every check.
+ *
+ * @author Matej Kormuth
+ * @since 1.0.0
+ */
+public final class HysteresisCondition implements Condition {
+
+    private final double on;
+    private final double off;
+    // Whether the condition is true when the value is above on threshold, or below it.
+    private final boolean rising;
+    private final DoubleSupplier supplier;
+
+    private volatile boolean state = false;
+
+    private HysteresisCondition(double on, double off, boolean rising, DoubleSupplier supplier) {
+        this.on = on;
+        this.off = off;
+        this.rising = rising;
+        this.supplier = supplier;
+    }
+
+    /**
+     * Creates condition that becomes true when the value is greater than on threshold and becomes false
+     * when the value is less than off threshold.
+     *
+     * @param on       on threshold
+     * @param off      off threshold, must not be greater than on threshold
+     * @param supplier supplier of values to check
+     * @return new condition
+     */
+    public static HysteresisCondition above(double on, double off, DoubleSupplier supplier) {
+        if (off > on) {
+            throw new IllegalArgumentException("Off threshold " + off + " is greater than on threshold " + on + "!");
+        }
+        return new HysteresisCondition(on, off, true, supplier);
+    }
+
+    /**
+     * Creates condition that becomes true when the value is less than on threshold and becomes false
+     * when the value is greater than off threshold.
+     *
+     * @param on       on threshold
+     * @param off      off threshold, must not be less than on threshold
+     * @param supplier supplier of values to check
+     * @return new condition
+     */
+    public static HysteresisCondition below(double on, double off, DoubleSupplier supplier) {
+        if (off < on) {
+            throw new IllegalArgumentException("Off threshold " + off + " is less than on threshold " + on + "!");
+        }
+        return new HysteresisCondition(on, off, false, supplier);
+    }
+
+    @Override
+    public boolean check() {
+        double value = supplier.getAsDouble();
+        boolean current = state;
+        if (rising) {
+            current = current ? value >= off : value > on;
+        } else {
+            current = current ? value <= off : value < on;
+        }
+        state = current;
+        return current;
+    }
+
+    @Override
+    public String toString() {
+        return "HysteresisCondition{" +
+                (rising ? "above" : "below") +
+                ", on=" + on +
+                ", off=" + off +
+                '}';
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.conditions;
+
+/**
+ * Push condition whose value is set from code, for example from a button handler or a message listener.
+ *
+ * @author Matej Kormuth
+ * @since 1.0.0
+ */
+public final class SettableCondition extends AbstractPushCondition {
+
+    private volatile boolean value;
+
+    /**
+     * Creates new condition with specified initial value.
+     *
+     * @param initialValue initial value
+     */
+    public SettableCondition(boolean initialValue) {
+        this.value = initialValue;
+    }
+
+    /**
+     * Sets the value of this condition and notifies subscribers if it changed. Concurrent calls are serialized,
+     * so the value of this condition is the last value received by subscribers.
+     *
+     * @param value new value
+     */
+    public synchronized void set(boolean value) {
+        this.value = value;
+        publish(value);
+    }
+
+    @Override
+    public boolean check() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "SettableCondition{value=" + value + '}';
+    }
+}
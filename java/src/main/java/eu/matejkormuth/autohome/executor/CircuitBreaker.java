@@ -0,0 +1,122 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.executor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops checking of a condition that keeps failing. After specified number of consecutive failures (exceptions
+ * or timeouts) the breaker opens and the condition is not checked until the open interval passes. Then one
+ * trial check is allowed (half-open). Success closes the breaker, failure opens it again.
+ * <p>
+ * Only accessed from the ticker thread of Executor.
+ *
+ * @author Matej Kormuth
+ * @since 1.0.0
+ */
+final class CircuitBreaker {
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    // Number of consecutive failures that opens the breaker.
+    private final int failureThreshold;
+    // How long the breaker stays open in nanoseconds.
+    private final long openInterval;
+    // State reported to listeners while the breaker is open.
+    final boolean fallback;
+
+    private State state = State.CLOSED;
+    // Number of consecutive failures.
+    private int failures = 0;
+    // Time when the breaker was opened.
+    private long openedAt;
+
+    CircuitBreaker(int failureThreshold, long openInterval, boolean fallback) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("Failure threshold must be positive!");
+        }
+        if (openInterval <= 0) {
+            throw new IllegalArgumentException("Open interval must be positive!");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openInterval = openInterval;
+        this.fallback = fallback;
+    }
+
+    // Returns whether the condition can be checked at specified time. Moves open breaker to half-open
+    // when the open interval passed.
+    boolean allowCheck(long now) {
+        if (state == State.OPEN) {
+            if (now - openedAt < openInterval) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+        }
+        return true;
+    }
+
+    // Records successful check.
+    void onSuccess() {
+        failures = 0;
+        state = State.CLOSED;
+    }
+
+    // Records failed check. Returns true if the breaker was opened by this failure.
+    boolean onFailure(long now) {
+        failures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = now;
+            return true;
+        }
+        return false;
+    }
+
+    boolean isOpen() {
+        return state == State.OPEN;
+    }
+
+    State getState() {
+        return state;
+    }
+
+    int getFailures() {
+        return failures;
+    }
+
+    long getOpenInterval() {
+        return openInterval;
+    }
+
+    @Override
+    public String toString() {
+        return state + "(" + failures + "/" + failureThreshold + ", "
+                + TimeUnit.NANOSECONDS.toMillis(openInterval) + "ms)";
+    }
+}
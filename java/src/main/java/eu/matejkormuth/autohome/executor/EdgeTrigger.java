@@ -0,0 +1,83 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.executor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filters repeated notifications about the same state. Used by When and Threshold in edge-triggered mode.
+ *
+ * @author Matej Kormuth
+ * @since 1.0.0
+ */
+final class EdgeTrigger {
+
+    // Value of last state before any state was passed.
+    private static final int UNKNOWN = -1;
+
+    // Whether repeated states should be filtered.
+    private boolean enabled = false;
+    // Interval in nanoseconds after which is the same state passed again, zero to never pass it again.
+    private long reassertInterval = 0;
+
+    // Last state that passed the filter (0 = false, 1 = true).
+    private int lastState = UNKNOWN;
+    // Time when last state passed the filter.
+    private long lastPassed;
+
+    // Enables filtering with specified reassert interval in nanoseconds.
+    void enable(long reassertInterval) {
+        if (reassertInterval < 0) {
+            throw new IllegalArgumentException("Reassert interval can't be negative!");
+        }
+        this.enabled = true;
+        this.reassertInterval = reassertInterval;
+    }
+
+    // Returns whether listeners should be notified about specified state.
+    boolean accept(boolean state, long now) {
+        if (!enabled) {
+            return true;
+        }
+
+        int newState = state ? 1 : 0;
+        if (newState != lastState || (reassertInterval > 0 && now - lastPassed >= reassertInterval)) {
+            lastState = newState;
+            lastPassed = now;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        if (!enabled) {
+            return "level";
+        }
+        return reassertInterval == 0 ? "edge" : "edge/" + TimeUnit.NANOSECONDS.toMillis(reassertInterval) + "ms";
+    }
+}
@@ -27,14 +27,34 @@
 package eu.matejkormuth.autohome.executor;
 
 import eu.matejkormuth.autohome.api.Condition;
+import eu.matejkormuth.autohome.api.PushCondition;
+import eu.matejkormuth.autohome.api.StateProcessor;
+import eu.matejkormuth.autohome.metrics.ExecutorMetrics;
+import eu.matejkormuth.autohome.metrics.Jmx;
+import eu.matejkormuth.autohome.metrics.LatencyHistogram;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.ObjectName;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * Main class of this library. It is used for pairing Conditions with condition state processors (switches, etc...).
@@ -47,13 +67,43 @@ public final class Executor {
 
     // Logger.
     private static final Logger log = LoggerFactory.getLogger(Executor.class);
+    // Duration of one tick of the timing wheel in milliseconds.
+    private static final long TICK_MILLIS = 100;
+    // Number of buckets in the timing wheel. One revolution of the wheel takes 51.2 seconds.
+    private static final int WHEEL_BUCKETS = 512;
+
     // Internal scheduled executor.
     private final ScheduledExecutorService executorService;
+    // Number of threads in internal executor.
+    private final int threads;
 
-    // List of all registered whens to check.
+    // List of all registered whens to check. Copy-on-write, so whens can be added and cancelled while
+    // the ticker reads the list without locking.
     private final List<When> whens;
-    // Interval in seconds, how often are all whens checked.
-    private final int whenCheckInterval = 7;
+    // Identifier of the next created When.
+    private final AtomicInteger nextId = new AtomicInteger();
+    // Timing wheel used to schedule checks of whens.
+    private final TimingWheel<When> wheel;
+    // Whens that are due in current tick. Only accessed from ticker thread.
+    private final List<When> due = new ArrayList<>();
+    private final Consumer<When> dueCollector = this::collectDue;
+    // Timeout in nanoseconds of one condition check in parallel mode, zero when checking sequentially.
+    private volatile long checkTimeout = 0;
+    // Executor that starts virtual thread for each task. Created on first use of virtual thread mode.
+    private ExecutorService virtualExecutor = null;
+    // Whether checks and listeners run on virtual threads.
+    private volatile boolean virtual = false;
+
+    // Metrics of ticks.
+    private final ExecutorMetrics metrics;
+    // Start of previous tick, used to measure jitter. Only accessed from ticker thread.
+    private long lastTick = 0;
+    // Name under which metrics are exposed over JMX or null when they are not exposed.
+    private volatile String metricsName = null;
+    // Names of registered MBeans of this executor.
+    private final List<ObjectName> mbeans = new CopyOnWriteArrayList<>();
+    // Names of registered MBeans of whens.
+    private final ConcurrentMap<When, ObjectName> whenMBeans = new ConcurrentHashMap<>();
 
     /**
      * Creates new instance of Executor with 2 threads.
@@ -68,60 +118,587 @@ public final class Executor {
      * @param threads number of threads to use for checking and executing stuff
      */
     public Executor(int threads) {
+        this(threads, true);
+    }
+
+    // Creates executor that only ticks automatically if specified. Otherwise tick(long) has to be called.
+    Executor(int threads, boolean ticking) {
+        this.threads = threads;
         executorService = Executors.newScheduledThreadPool(threads);
-        whens = new ArrayList<>();
+        whens = new CopyOnWriteArrayList<>();
+        metrics = new ExecutorMetrics(whens::size);
+        wheel = new TimingWheel<>(TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS), WHEEL_BUCKETS, System.nanoTime());
 
-        // Schedule whens checking periodically each ${whenCheckInterval} seconds.
-        executorService.scheduleAtFixedRate(this::checkWhens, 0, whenCheckInterval, TimeUnit.SECONDS);
+        if (ticking) {
+            // Advance the timing wheel each ${TICK_MILLIS} ms. All whens are checked from this one ticker.
+            executorService.scheduleAtFixedRate(this::tick, 0, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        }
     }
 
-    // Checks all whens and notifies all listeners.
-    private void checkWhens() {
+    // Checks all whens that are due and schedules their next check.
+    private void tick() {
+        tick(System.nanoTime());
+    }
+
+    // Checks all whens that are due at specified time and schedules their next check. Must not be called
+    // concurrently.
+    void tick(long now) {
+        if (lastTick != 0) {
+            metrics.getTickJitter().record(Math.abs(now - lastTick - wheel.getTickNanos()));
+        }
+        lastTick = now;
+
+        try {
+            wheel.advance(now, dueCollector);
+            if (due.isEmpty()) {
+                return;
+            }
+
+            checkWhens(due);
+
+            // Next check is planned from the start of this tick, so slow checks do not shift the schedule.
+            // Push conditions are only checked once, then they notify about changes by themselves.
+            for (int i = 0; i < due.size(); i++) {
+                When when = due.get(i);
+                if (!when.pushed && !when.cancelled) {
+                    wheel.schedule(when, now + when.nextInterval());
+                }
+            }
+            due.clear();
+        } catch (RuntimeException e) {
+            // Exception would cancel all future ticks.
+            log.error("Can't process executor tick because {}!", e);
+            due.clear();
+        } finally {
+            metrics.getTickDuration().record(System.nanoTime() - now);
+        }
+    }
+
+    // Adds specified when to whens due in current tick. Cancelled whens are dropped from the timing wheel here.
+    private void collectDue(When when) {
+        if (!when.cancelled) {
+            due.add(when);
+        }
+    }
+
+    // Checks specified whens and notifies all listeners.
+    private void checkWhens(List<When> whens) {
+        if (checkTimeout > 0) {
+            checkWhensParallel(whens);
+        } else {
+            checkWhensSequential(whens);
+        }
+    }
+
+    // Checks specified whens one by one on the current thread.
+    private void checkWhensSequential(List<When> whens) {
         When when;
-        long startTime, total;
+        long startTime, interval;
         for (int i = 0; i < whens.size(); i++) {
             when = whens.get(i);
+            // Listeners may change the adaptive interval, so it is read before them.
+            interval = when.nextInterval();
             // Profiling to find blocking (long operations).
             startTime = System.nanoTime();
+            if (!allowCheck(when, startTime)) {
+                continue;
+            }
             boolean result;
             try {
                 // Get the result from condition.
                 result = when.condition.check();
             } catch (Exception e) {
+                when.metrics.getCheckLatency().record(System.nanoTime() - startTime);
+                when.metrics.failed();
                 log.error("Can't check condition of {} because {}!", when, e);
+                failed(when);
+                // Skip to next 'When'.
+                continue;
+            }
+            when.metrics.getCheckLatency().record(System.nanoTime() - startTime);
+            succeeded(when);
+
+            // Notify al handlers.
+            deliver(when, result);
+            processed(when, System.nanoTime() - startTime, interval);
+        }
+    }
+
+    // Checks specified whens concurrently on the pool threads and notifies listeners from the current thread.
+    private void checkWhensParallel(List<When> whens) {
+        long timeout = checkTimeout;
+        int size = whens.size();
+        List<Check> checks = new ArrayList<>(size);
+        List<Future<Boolean>> futures = new ArrayList<>(size);
+        When when;
+        // Fan out all checks first, so the slowest one determines the duration of the tick.
+        long now = System.nanoTime();
+        for (int i = 0; i < size; i++) {
+            when = whens.get(i);
+            if (when.checking) {
+                // Previous check still occupies a thread, another one would only queue behind it.
+                log.warn("Condition of {} is still being checked since previous tick, skipping it.", when);
+                checks.add(null);
+                futures.add(null);
+                continue;
+            }
+            if (!allowCheck(when, now)) {
+                checks.add(null);
+                futures.add(null);
+                continue;
+            }
+            Check check = new Check(when, now);
+            checks.add(check);
+            futures.add(virtual ? virtualExecutor.submit(check) : executorService.submit(check));
+        }
+
+        for (int i = 0; i < size; i++) {
+            when = whens.get(i);
+            if (futures.get(i) == null) {
+                // Circuit breaker is open or previous check is still running.
+                continue;
+            }
+            boolean result;
+            try {
+                result = awaitCheck(checks.get(i), futures.get(i), timeout);
+            } catch (TimeoutException e) {
+                futures.get(i).cancel(true);
+                when.metrics.timedOut();
+                if (when.circuitBreaker != null) {
+                    log.warn("Condition of {} did not complete in {} ms.", when,
+                            TimeUnit.NANOSECONDS.toMillis(timeout));
+                    failed(when);
+                    continue;
+                }
+                log.warn("Condition of {} did not complete in {} ms, counting it as false.", when,
+                        TimeUnit.NANOSECONDS.toMillis(timeout));
+                result = false;
+            } catch (ExecutionException e) {
+                when.metrics.failed();
+                log.error("Can't check condition of {} because {}!", when, e.getCause());
+                failed(when);
                 // Skip to next 'When'.
                 continue;
+            } catch (InterruptedException e) {
+                // Executor is shutting down, cancel remaining checks.
+                for (int j = i; j < size; j++) {
+                    if (futures.get(j) != null) {
+                        futures.get(j).cancel(true);
+                    }
+                }
+                Thread.currentThread().interrupt();
+                return;
             }
 
+            succeeded(when);
+            long interval = when.nextInterval();
+            long delivered = System.nanoTime();
             // Notify al handlers.
+            deliver(when, result);
+            processed(when, checks.get(i).duration + System.nanoTime() - delivered, interval);
+        }
+    }
+
+    // Records overrun when processing of specified when (its check and listeners) took more than half of its
+    // interval, so its next check may be late.
+    private void processed(When when, long nanos, long interval) {
+        double millis = nanos / 1e6;
+        double budget = interval / 2e6;
+        if (millis > budget) {
+            metrics.overrun();
+            log.warn("When {} is taking more time than it should. Last processing took {} ms, but its budget "
+                            + "is {} ms (half of its interval). That is {}% of the budget.",
+                    when, String.format("%.1f", millis), String.format("%.1f", budget),
+                    String.format("%.0f", millis * 100 / budget));
+        }
+    }
+
+    // Returns whether condition of specified when can be checked, which is false while its circuit breaker is open.
+    private boolean allowCheck(When when, long now) {
+        CircuitBreaker breaker = when.circuitBreaker;
+        return breaker == null || breaker.allowCheck(now);
+    }
+
+    // Records successful check of specified when in its circuit breaker.
+    private void succeeded(When when) {
+        CircuitBreaker breaker = when.circuitBreaker;
+        if (breaker == null) {
+            return;
+        }
+
+        if (breaker.getState() != CircuitBreaker.State.CLOSED) {
+            log.info("Condition of {} recovered, closing circuit breaker.", when);
+        }
+        breaker.onSuccess();
+    }
+
+    // Records failed check of specified when in its circuit breaker and reports fallback state when it is open.
+    private void failed(When when) {
+        CircuitBreaker breaker = when.circuitBreaker;
+        if (breaker == null) {
+            return;
+        }
+
+        if (breaker.onFailure(System.nanoTime())) {
+            log.warn("Condition of {} failed {} times in a row, not checking it for {} ms.", when,
+                    breaker.getFailures(), TimeUnit.NANOSECONDS.toMillis(breaker.getOpenInterval()));
+        }
+        if (breaker.isOpen()) {
+            deliver(when, breaker.fallback);
+        }
+    }
+
+    // Waits for the result of check. Deadline of each check starts when the check actually starts running, but
+    // check that waits for a free thread is only given one more timeout to start, so checks queued behind
+    // blocked threads can not stall the tick.
+    private boolean awaitCheck(Check check, Future<Boolean> future, long timeout)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        long hardDeadline = check.submitted + 2 * timeout;
+        while (true) {
+            long started = check.started;
+            long deadline = started == 0 ? hardDeadline : Math.min(started + timeout, hardDeadline);
+            long remaining = deadline - System.nanoTime();
+            try {
+                return future.get(Math.max(remaining, 0), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                if (remaining <= 0) {
+                    throw e;
+                }
+                // Check could start while waiting, its deadline is recomputed in the next iteration.
+            }
+        }
+    }
+
+    // Passes the result to listeners of specified when. In virtual thread mode listeners are executed on virtual
+    // threads in the order of results, otherwise they are executed on the current thread.
+    private void deliver(When when, boolean result) {
+        if (virtual) {
+            when.dispatcher.polled(result);
+            return;
+        }
+        synchronized (when) {
+            // Value pushed while the condition was being checked is newer than the result.
+            if (when.pushed && when.dispatcher.isPushReceived()) {
+                return;
+            }
+            notifyWhen(when, result);
+        }
+    }
+
+    // Notifies listeners of specified when about the result. Whens of push conditions can be notified from
+    // more threads, so the notification is synchronized.
+    private void notifyWhen(When when, boolean result) {
+        synchronized (when) {
+            long start = System.nanoTime();
             if (result) {
                 when.notifyTrue();
             } else {
                 when.notifyFalse();
             }
-            total = (System.nanoTime() - startTime) / 1000000;
-            if (total > whenCheckInterval * 1000 / whens.size() / 2) {
-                // Log warning message about execution time.
-                log.warn("When {} is taking more time then it should. Last processing took {} ms, "
-                                + "but AVG planned execution time for one When is {}."
-                                + " That {}% of planned execution time.",
-                        total, whenCheckInterval * 1000 / whens.size(),
-                        (int) (total / whenCheckInterval * 1000 / whens.size() * 100));
+            when.metrics.getListenerLatency().record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Switches this executor to parallel mode. In parallel mode all conditions are checked concurrently
+     * using the threads of this executor and each check has to complete in specified timeout. Check that
+     * does not complete in time is counted as false for its When only.
+     * <p>
+     * Checks that block uninterruptibly (for example InetAddress.isReachable()) still occupy their thread
+     * until they return, so the executor should have enough threads for all slow conditions. Check that waits
+     * for a free thread longer than the timeout is counted as timed out too and When whose check is still
+     * running is not checked again until the check returns.
+     *
+     * @param checkTimeout maximum duration of one condition check
+     * @return instance of itself for fluent method chaining
+     * @throws IllegalStateException if this executor has less than 2 threads
+     */
+    public Executor parallel(Duration checkTimeout) {
+        if (threads < 2) {
+            throw new IllegalStateException("Parallel mode requires at least 2 threads, but executor has "
+                    + threads + "!");
+        }
+        if (checkTimeout.isNegative() || checkTimeout.isZero()) {
+            throw new IllegalArgumentException("Check timeout must be positive!");
+        }
+        this.checkTimeout = checkTimeout.toNanos();
+        this.virtual = false;
+        return this;
+    }
+
+    /**
+     * Switches this executor to virtual thread mode, if it runs on Java 21 or newer. In virtual thread mode each
+     * condition check and each notification of listeners runs on its own virtual thread, so blocking conditions
+     * and actions do not occupy threads of this executor. Checks have to complete in specified timeout like in
+     * parallel mode. Listeners of one When are still executed one by one in the order of results. Ticks are
+     * driven by the threads of this executor.
+     * <p>
+     * On older Java this falls back to parallel mode if this executor has at least 2 threads, otherwise it stays
+     * in sequential mode.
+     *
+     * @param checkTimeout maximum duration of one condition check
+     * @return instance of itself for fluent method chaining
+     * @see #isVirtual()
+     */
+    public Executor virtualThreads(Duration checkTimeout) {
+        if (checkTimeout.isNegative() || checkTimeout.isZero()) {
+            throw new IllegalArgumentException("Check timeout must be positive!");
+        }
+
+        synchronized (this) {
+            if (virtualExecutor == null) {
+                virtualExecutor = VirtualThreads.newExecutor();
+            }
+        }
+        if (virtualExecutor == null) {
+            if (threads < 2) {
+                log.warn("Virtual threads are not available on Java {}, checking conditions sequentially.",
+                        System.getProperty("java.version"));
+                return sequential();
             }
+            log.warn("Virtual threads are not available on Java {}, checking conditions in parallel on {} threads.",
+                    System.getProperty("java.version"), threads);
+            return parallel(checkTimeout);
         }
+
+        this.checkTimeout = checkTimeout.toNanos();
+        this.virtual = true;
+        return this;
+    }
+
+    /**
+     * Returns whether conditions and listeners run on virtual threads.
+     *
+     * @return true if this executor is in virtual thread mode, false otherwise
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Switches this executor back to sequential mode, in which conditions are checked one by one.
+     *
+     * @return instance of itself for fluent method chaining
+     */
+    public Executor sequential() {
+        this.checkTimeout = 0;
+        this.virtual = false;
+        return this;
     }
 
     /**
      * Creates new When. It is used for pairing conditions with state processors.
+     * <p>
+     * If the condition is PushCondition, it is checked only once and then its When is notified each time the
+     * condition pushes new value. Listeners are executed on the threads of this executor in the order in
+     * which the values were pushed. Result of the first check is dropped if the condition pushed a value
+     * before the result was delivered, because the pushed value is newer.
+     * <p>
+     * Whens can be created and cancelled while the executor is running, from any thread.
      *
      * @param condition condition that provides state
      * @return newly created when connection
+     * @see When#cancel()
      */
     public When when(Condition condition) {
         When when = new When(condition);
+        when.id = nextId.getAndIncrement();
+        when.executor = this;
+        when.dispatcher = new Dispatcher(when);
         this.whens.add(when);
+        String name = metricsName;
+        if (name != null) {
+            exposeMetrics(name, when);
+        }
+        if (when.pushed) {
+            ((PushCondition) condition).subscribe(when.dispatcher);
+        }
+        // First check is done in the next tick.
+        wheel.schedule(when, System.nanoTime());
         return when;
     }
 
+    // Removes specified cancelled when. It is dropped from the timing wheel when it is due next time.
+    void remove(When when) {
+        if (!whens.remove(when)) {
+            return;
+        }
+        if (when.pushed) {
+            ((PushCondition) when.condition).unsubscribe(when.dispatcher);
+        }
+        Jmx.unregister(whenMBeans.remove(when));
+    }
+
+    /**
+     * Returns number of whens registered in this executor that were not cancelled.
+     *
+     * @return number of whens
+     */
+    public int size() {
+        return whens.size();
+    }
+
+    /**
+     * Stops checking of all whens and shuts down threads of this executor. Checks that are currently
+     * running are interrupted.
+     */
+    public void shutdown() {
+        executorService.shutdownNow();
+        synchronized (this) {
+            if (virtualExecutor != null) {
+                virtualExecutor.shutdownNow();
+            }
+        }
+        metricsName = null;
+        for (ObjectName mbean : mbeans) {
+            Jmx.unregister(mbean);
+        }
+        mbeans.clear();
+        for (When when : whenMBeans.keySet()) {
+            Jmx.unregister(whenMBeans.remove(when));
+        }
+    }
+
+    /**
+     * Returns metrics of ticks of this executor. Metrics are always recorded, even when they are not exposed.
+     *
+     * @return metrics of this executor
+     */
+    public ExecutorMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Exposes metrics of this executor and of all its whens (registered now or later) over JMX. Executor metrics
+     * are registered as type=Executor,name=${name} and metrics of whens as type=When,name=${name}/${id},
+     * where id is the order in which the When was created. MBeans are unregistered on shutdown() and MBean of
+     * When is unregistered when it is cancelled.
+     *
+     * @param name name of this executor
+     * @return instance of itself for fluent method chaining
+     */
+    public Executor exposeMetrics(String name) {
+        this.metricsName = name;
+        ObjectName objectName = Jmx.register(metrics, "Executor", name);
+        if (objectName != null) {
+            mbeans.add(objectName);
+        }
+        for (When when : whens) {
+            exposeMetrics(name, when);
+        }
+        return this;
+    }
 
+    // Exposes metrics of specified when over JMX.
+    private void exposeMetrics(String name, When when) {
+        ObjectName objectName = Jmx.register(when.metrics, "When", name + "/" + when.id);
+        if (objectName != null) {
+            whenMBeans.put(when, objectName);
+            // When could be cancelled while it was registering.
+            if (when.cancelled) {
+                Jmx.unregister(whenMBeans.remove(when));
+            }
+        }
+    }
+
+    // Receives values pushed by condition (or checked in virtual thread mode) and notifies its When on the threads
+    // of executor. Values are processed one by one in the order they were received, without blocking the sender.
+    final class Dispatcher implements StateProcessor, Runnable {
+        private final When when;
+        private final ConcurrentLinkedQueue<Boolean> values = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        // Whether the condition pushed any value. Guarded by this.
+        private boolean pushReceived = false;
+
+        Dispatcher(When when) {
+            this.when = when;
+        }
+
+        // Receives value pushed by the condition.
+        @Override
+        public void onStateUpdated(boolean newState) {
+            synchronized (this) {
+                pushReceived = true;
+                values.add(newState);
+            }
+            schedule();
+        }
+
+        // Receives result of check in virtual thread mode. Result of push condition is dropped if the condition
+        // already pushed a value, which is newer.
+        void polled(boolean result) {
+            synchronized (this) {
+                if (when.pushed && pushReceived) {
+                    return;
+                }
+                values.add(result);
+            }
+            schedule();
+        }
+
+        // Returns whether the condition pushed any value.
+        synchronized boolean isPushReceived() {
+            return pushReceived;
+        }
+
+        // Submits this subscription to executor, unless it is already submitted.
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    (virtual ? virtualExecutor : executorService).execute(this);
+                } catch (RejectedExecutionException e) {
+                    // Executor was shut down.
+                    values.clear();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            Boolean value;
+            while ((value = values.poll()) != null) {
+                if (!when.cancelled) {
+                    notifyWhen(when, value);
+                }
+            }
+            scheduled.set(false);
+            // Value could be pushed after the queue was drained, but before the flag was cleared.
+            if (!values.isEmpty()) {
+                schedule();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Dispatcher{" + when + '}';
+        }
+    }
+
+    // Condition check that remembers when it was submitted and when it started running.
+    private static final class Check implements Callable<Boolean> {
+        private final When when;
+        private final long submitted;
+        private volatile long started;
+        // Duration of the check in nanoseconds, set when it returns.
+        private volatile long duration;
+
+        Check(When when, long submitted) {
+            this.when = when;
+            this.submitted = submitted;
+        }
+
+        @Override
+        public Boolean call() throws Exception {
+            long start = System.nanoTime();
+            started = start;
+            when.checking = true;
+            try {
+                return when.condition.check();
+            } finally {
+                when.checking = false;
+                duration = System.nanoTime() - start;
+                when.metrics.getCheckLatency().record(duration);
+            }
+        }
+    }
 }
@@ -0,0 +1,112 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.executor;
+
+import eu.matejkormuth.autohome.api.StateProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runnables and state processors of When or Threshold. They are executed in the order in which they were added.
+ *
+ * @author Matej Kormuth
+ * @since 1.0.0
+ */
+final class Listeners {
+
+    // Logger.
+    private static final Logger log = LoggerFactory.getLogger(Listeners.class);
+
+    // Runnables and state processors in the order in which they were added.
+    private final List<Listener> listeners = new ArrayList<>(4);
+
+    // Adds runnable that is executed when the state is true.
+    void addTrue(Runnable runnable) {
+        listeners.add(new Listener(true, runnable, null, false));
+    }
+
+    // Adds runnable that is executed when the state is false.
+    void addFalse(Runnable runnable) {
+        listeners.add(new Listener(false, runnable, null, false));
+    }
+
+    // Adds state processor that receives states not filtered by edge-triggered mode. Nested threshold receives
+    // every state, so it can count repeated states.
+    void add(StateProcessor processor) {
+        listeners.add(new Listener(false, null, processor, processor instanceof Threshold));
+    }
+
+    // Runs runnables of specified state and passes the state to state processors. Listeners are skipped when
+    // the state is filtered by edge-triggered mode, only nested thresholds still receive it.
+    void notify(boolean state, boolean edge) {
+        Listener listener;
+        for (int i = 0; i < listeners.size(); i++) {
+            listener = listeners.get(i);
+            try {
+                if (listener.processor != null) {
+                    if (edge || listener.everyState) {
+                        listener.processor.onStateUpdated(state);
+                    }
+                } else if (edge && listener.state == state) {
+                    listener.runnable.run();
+                }
+            } catch (Exception e) {
+                log.error("Can't execute {} because {}!", listener, e);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return listeners.toString();
+    }
+
+    // Runnable of one state or state processor of all states.
+    private static final class Listener {
+        // State in which the runnable is executed.
+        private final boolean state;
+        private final Runnable runnable;
+        private final StateProcessor processor;
+        // Whether the state processor receives states filtered by edge-triggered mode.
+        private final boolean everyState;
+
+        Listener(boolean state, Runnable runnable, StateProcessor processor, boolean everyState) {
+            this.state = state;
+            this.runnable = runnable;
+            this.processor = processor;
+            this.everyState = everyState;
+        }
+
+        @Override
+        public String toString() {
+            return processor != null ? processor.toString() : (state ? "isTrue:" : "isFalse:") + runnable;
+        }
+    }
+}
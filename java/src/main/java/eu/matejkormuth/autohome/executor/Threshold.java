@@ -27,11 +27,8 @@
 package eu.matejkormuth.autohome.executor;
 
 import eu.matejkormuth.autohome.api.StateProcessor;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.time.Duration;
 
 /**
  * Threshold is used for smoothing out state changes. It is useful when it takes time for Condition
@@ -46,8 +43,6 @@ import java.util.List;
  */
 public final class Threshold implements StateProcessor {
 
-    private static final Logger log = LoggerFactory.getLogger(Threshold.class);
-
     // Threshold that should be reached before changing state.
     private final int threshold;
 
@@ -56,18 +51,16 @@ public final class Threshold implements StateProcessor {
     // Current false state score.
     private int currentFalseScore;
 
-    // List of runnables that should be called when condition returns true.
-    private final List<Runnable> isTrue;
-    // List of runnables that should be called when condition returns false.
-    private final List<Runnable> isFalse;
+    // Runnables and state processors in the order in which they were added.
+    private final Listeners listeners = new Listeners();
+    // Filter of repeated states used in edge-triggered mode.
+    private final EdgeTrigger edgeTrigger = new EdgeTrigger();
 
     // Parent When if available.
     When parent = null;
 
     Threshold(int threshold) {
         this.threshold = threshold;
-        isFalse = new ArrayList<>(2);
-        isTrue = new ArrayList<>(2);
     }
 
     @Override
@@ -92,40 +85,69 @@ public final class Threshold implements StateProcessor {
     /**
      * Adds specified Runnable or method (using method reference) to list of true state listeners.
      * <p>
-     * Method gets executed many times even when state of condition isn't changed!
+     * Unless edge-triggered mode is used, method gets executed many times even when state of condition
+     * isn't changed!
      *
      * @param method method or Runnable that should be executed when condition state is true
      * @return instance of itself for fluent method chaining
      */
     public Threshold isTrue(Runnable method) {
-        isTrue.add(method);
+        listeners.addTrue(method);
         return this;
     }
 
     /**
      * Adds specified Runnable or method (using method reference) to list of false state listeners.
      * <p>
-     * Method gets executed many times even when state of condition isn't changed!
+     * Unless edge-triggered mode is used, method gets executed many times even when state of condition
+     * isn't changed!
      *
      * @param method method or Runnable that should be executed when condition state is false
      * @return instance of itself for fluent method chaining
      */
     public Threshold isFalse(Runnable method) {
-        isFalse.add(method);
+        listeners.addFalse(method);
         return this;
     }
 
     /**
      * Adds specified StateProcessor to list of listeners.
      * <p>
-     * Method gets executed many times even when state of condition isn't changed!
+     * Method gets executed many times even when state of condition isn't changed! In edge-triggered mode
+     * state processors only receive states that isTrue() and isFalse() listeners would be executed for, except
+     * thresholds, which receive every state so they can count repeated states.
      *
      * @param stateProcessor state processor that is captable of processing / consuming true or false values
      * @return instance of itself for fluent method chaining
      */
     public Threshold stateChanged(StateProcessor stateProcessor) {
-        isTrue.add(() -> stateProcessor.onStateUpdated(true));
-        isFalse.add(() -> stateProcessor.onStateUpdated(false));
+        listeners.add(stateProcessor);
+        return this;
+    }
+
+    /**
+     * Switches this Threshold to edge-triggered mode. In edge-triggered mode isTrue(), isFalse() and stateChanged()
+     * listeners are only executed when the state changes. Thresholds still receive every state, so they can count
+     * repeated states.
+     *
+     * @return instance of itself for fluent method chaining
+     */
+    public Threshold edgeTriggered() {
+        edgeTrigger.enable(0);
+        return this;
+    }
+
+    /**
+     * Switches this Threshold to edge-triggered mode. In edge-triggered mode isTrue(), isFalse() and stateChanged()
+     * listeners are only executed when the state changes or when specified interval passed since they were last
+     * executed and the state is still the same. This can be used to re-assert state of devices that may miss
+     * a command.
+     *
+     * @param reassertEvery interval after which are listeners of unchanged state executed again
+     * @return instance of itself for fluent method chaining
+     */
+    public Threshold edgeTriggered(Duration reassertEvery) {
+        edgeTrigger.enable(reassertEvery.toNanos());
         return this;
     }
 
@@ -141,24 +163,22 @@ public final class Threshold implements StateProcessor {
 
     // Used to notify all listeners about 'true' state. Called from Executor.
     void triggerTrue() {
-        for (int i = 0; i < isTrue.size(); i++) {
-            try {
-                isTrue.get(i).run();
-            } catch (Exception e) {
-                log.error("Can't execute {} because {}!", isTrue.get(i), e);
-            }
-        }
+        listeners.notify(true, edgeTrigger.accept(true, System.nanoTime()));
     }
 
     // Used to notify all listeners about 'false' state. Called from Executor.
     void triggerFalse() {
-        for (int i = 0; i < isFalse.size(); i++) {
-            try {
-                isFalse.get(i).run();
-            } catch (Exception e) {
-                log.error("Can't execute {} because {}!", isFalse.get(i), e);
-            }
-        }
+        listeners.notify(false, edgeTrigger.accept(false, System.nanoTime()));
+    }
+
+    /**
+     * Returns whether this threshold has received some states but not enough of them to pass the state further.
+     *
+     * @return true if this threshold is counting towards a state, false otherwise
+     */
+    public boolean isCounting() {
+        int score = Math.max(currentTrueScore, currentFalseScore);
+        return score > 0 && score < threshold;
     }
 
     public int getThreshold() {
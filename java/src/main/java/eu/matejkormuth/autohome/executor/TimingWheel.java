@@ -0,0 +1,151 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.executor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel. Items are scheduled in O(1) into one of the buckets of the wheel and are expired when
+ * the wheel is advanced past their deadline. Only one thread (ticker) may advance the wheel, but items can be
+ * scheduled from any thread.
+ *
+ * @param <T> type of scheduled items
+ * @author Matej Kormuth
+ * @since 1.0.0
+ */
+final class TimingWheel<T> {
+
+    // Duration of one tick in nanoseconds.
+    private final long tickNanos;
+    // Buckets of the wheel. Length is always power of two.
+    private final List<List<Entry<T>>> buckets;
+    // Mask used to compute index of bucket from tick.
+    private final int mask;
+    // Items scheduled since last advance. Accessed from all threads.
+    private final Queue<Entry<T>> pending = new ConcurrentLinkedQueue<>();
+    // Time of tick zero.
+    private final long startTime;
+    // Last tick that was processed. Only accessed from ticker thread.
+    private long currentTick = -1;
+
+    TimingWheel(long tickNanos, int bucketCount, long startTime) {
+        if (tickNanos <= 0) {
+            throw new IllegalArgumentException("Tick duration must be positive!");
+        }
+        if (bucketCount <= 0 || Integer.bitCount(bucketCount) != 1) {
+            throw new IllegalArgumentException("Bucket count must be power of two!");
+        }
+        this.tickNanos = tickNanos;
+        this.startTime = startTime;
+        this.mask = bucketCount - 1;
+        this.buckets = new ArrayList<>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            buckets.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Schedules specified item to be expired at specified deadline. This method is thread safe.
+     *
+     * @param item         item to schedule
+     * @param deadlineNanos deadline in the same time base as System.nanoTime()
+     */
+    void schedule(T item, long deadlineNanos) {
+        // Round up, so items never expire before their deadline.
+        long ticks = deadlineNanos - startTime;
+        long deadlineTick = ticks <= 0 ? 0 : (ticks + tickNanos - 1) / tickNanos;
+        pending.add(new Entry<>(item, deadlineTick));
+    }
+
+    /**
+     * Advances the wheel to specified time and passes all items with deadline before or at that time to
+     * specified consumer. Must be only called from one thread.
+     *
+     * @param now     current time in the same time base as System.nanoTime()
+     * @param expired consumer of expired items
+     */
+    void advance(long now, Consumer<T> expired) {
+        long targetTick = (now - startTime) / tickNanos;
+
+        // Move pending items to buckets. Items that are already late go to the next processed tick.
+        Entry<T> entry;
+        while ((entry = pending.poll()) != null) {
+            long tick = Math.max(entry.deadlineTick, currentTick + 1);
+            buckets.get((int) (tick & mask)).add(entry);
+        }
+
+        // Process all ticks that passed since last call, but each bucket only once per call.
+        long lastTick = Math.min(targetTick, currentTick + buckets.size());
+        for (long tick = currentTick + 1; tick <= lastTick; tick++) {
+            expireBucket(buckets.get((int) (tick & mask)), targetTick, expired);
+        }
+        if (targetTick > currentTick) {
+            currentTick = targetTick;
+        }
+    }
+
+    // Expires all items from specified bucket that have deadline before or at specified tick.
+    private void expireBucket(List<Entry<T>> bucket, long tick, Consumer<T> expired) {
+        int i = 0;
+        while (i < bucket.size()) {
+            Entry<T> entry = bucket.get(i);
+            if (entry.deadlineTick <= tick) {
+                // Swap remove, order of items in bucket is not important.
+                int last = bucket.size() - 1;
+                bucket.set(i, bucket.get(last));
+                bucket.remove(last);
+                expired.accept(entry.item);
+            } else {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Returns duration of one tick of this wheel in nanoseconds.
+     *
+     * @return duration of one tick in nanoseconds
+     */
+    long getTickNanos() {
+        return tickNanos;
+    }
+
+    // Scheduled item with its absolute deadline tick.
+    private static final class Entry<T> {
+        private final T item;
+        private final long deadlineTick;
+
+        Entry(T item, long deadlineTick) {
+            this.item = item;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+}
@@ -27,12 +27,14 @@
 package eu.matejkormuth.autohome.executor;
 
 import eu.matejkormuth.autohome.api.Condition;
+import eu.matejkormuth.autohome.api.PushCondition;
 import eu.matejkormuth.autohome.api.StateProcessor;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import eu.matejkormuth.autohome.metrics.WhenMetrics;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Represents connection between Condition and its listeners - Runnables / method references.
@@ -42,82 +44,255 @@ import java.util.List;
  */
 public final class When {
 
-    // Logger.
-    private static final Logger log = LoggerFactory.getLogger(When.class);
+    // Default interval of checking the condition.
+    private static final long DEFAULT_INTERVAL = TimeUnit.SECONDS.toNanos(7);
 
     // Condition used in this when.
     final Condition condition;
-    // List of runnables that should be called when condition returns true.
-    private final List<Runnable> isTrue;
-    // List of runnables that should be called when condition returns false.
-    private final List<Runnable> isFalse;
+    // Whether the condition pushes its changes, so it does not have to be polled.
+    final boolean pushed;
+    // Runnables and state processors in the order in which they were added.
+    private final Listeners listeners = new Listeners();
+    // Filter of repeated states used in edge-triggered mode.
+    private final EdgeTrigger edgeTrigger = new EdgeTrigger();
+    // Interval in nanoseconds, how often is the condition checked. Read by Executor.
+    volatile long interval = DEFAULT_INTERVAL;
+    // Thresholds created by threshold(). Adaptive polling stays fast while they are counting.
+    private final List<Threshold> thresholds = new ArrayList<>(1);
+    // Bounds of adaptive interval in nanoseconds. Zero maximum means adaptive polling is disabled.
+    private long adaptiveMin = 0;
+    private long adaptiveMax = 0;
+    // Current adaptive interval in nanoseconds.
+    private volatile long adaptiveInterval = 0;
+    // Last state seen by adaptive polling (-1 = unknown, 0 = false, 1 = true).
+    private int adaptiveLastState = -1;
+    // Executor that created this When and its identifier in the executor. Set by Executor.
+    Executor executor;
+    int id;
+    // Whether this When was cancelled. Cancelled When is not checked and its listeners are not executed.
+    volatile boolean cancelled = false;
+    // Passes results to listeners on threads of Executor. Set by Executor.
+    Executor.Dispatcher dispatcher;
+    // Metrics of checks and listeners. Recorded by Executor.
+    final WhenMetrics metrics = new WhenMetrics(this::toString);
+    // Circuit breaker of the condition or null if failures are just logged.
+    volatile CircuitBreaker circuitBreaker = null;
+    // Whether the condition is being checked on a thread of Executor in parallel mode.
+    volatile boolean checking = false;
 
     // Only allow Executor to make instances of When.
     When(Condition applies) {
         this.condition = applies;
-        isFalse = new ArrayList<>(2);
-        isTrue = new ArrayList<>(2);
+        this.pushed = applies instanceof PushCondition;
     }
 
     // Used to notify all listeners about 'true' state. Called from Executor.
     void notifyTrue() {
-        for (int i = 0; i < isTrue.size(); i++) {
-            try {
-                isTrue.get(i).run();
-            } catch (Exception e) {
-                log.error("Can't execute {} because {}!", isTrue.get(i), e);
-            }
-        }
+        listeners.notify(true, edgeTrigger.accept(true, System.nanoTime()));
+        adapt(true);
     }
 
     // Used to notify all listeners about 'false' state. Called from Executor.
     void notifyFalse() {
-        for (int i = 0; i < isFalse.size(); i++) {
-            try {
-                isFalse.get(i).run();
-            } catch (Exception e) {
-                log.error("Can't execute {} because {}!", isFalse.get(i), e);
+        listeners.notify(false, edgeTrigger.accept(false, System.nanoTime()));
+        adapt(false);
+    }
+
+    // Updates adaptive interval. The interval doubles after each check with unchanged result and snaps back
+    // to the minimum when the result flips or a threshold is counting.
+    private void adapt(boolean state) {
+        if (adaptiveMax == 0) {
+            return;
+        }
+
+        int current = state ? 1 : 0;
+        boolean flipped = adaptiveLastState != current;
+        adaptiveLastState = current;
+        if (flipped || isAnyThresholdCounting()) {
+            adaptiveInterval = adaptiveMin;
+        } else {
+            adaptiveInterval = Math.min(adaptiveInterval * 2, adaptiveMax);
+        }
+    }
+
+    // Returns whether any threshold of this When has started counting towards a state.
+    private boolean isAnyThresholdCounting() {
+        for (int i = 0; i < thresholds.size(); i++) {
+            if (thresholds.get(i).isCounting()) {
+                return true;
             }
         }
+        return false;
+    }
+
+    // Returns delay in nanoseconds until the next check of the condition. Called from Executor.
+    long nextInterval() {
+        CircuitBreaker breaker = circuitBreaker;
+        if (breaker != null && breaker.isOpen()) {
+            // Next check is the half-open trial.
+            return breaker.getOpenInterval();
+        }
+        return adaptiveMax == 0 ? interval : adaptiveInterval;
+    }
+
+    /**
+     * Sets how often is the condition of this When checked. Default interval is 7 seconds. The interval is
+     * rounded up to the tick of Executor (100 ms). New interval is used since the next check. Push conditions
+     * are not polled, so the interval does not apply to them. This disables adaptive polling.
+     *
+     * @param interval interval between two checks of the condition
+     * @return instance of itself for fluent method chaining
+     */
+    public When every(Duration interval) {
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("Interval must be positive!");
+        }
+        this.interval = interval.toNanos();
+        this.adaptiveMax = 0;
+        return this;
+    }
+
+    /**
+     * Switches this When to adaptive polling. The condition is checked every min interval at first and the
+     * interval doubles after each check with the same result up to max interval. When the result changes or
+     * a threshold of this When starts counting, the interval snaps back to min interval, so changes are
+     * still detected quickly while stable conditions are checked rarely.
+     *
+     * @param min interval used after a change
+     * @param max longest interval used for stable conditions
+     * @return instance of itself for fluent method chaining
+     */
+    public When adaptive(Duration min, Duration max) {
+        if (min.isNegative() || min.isZero()) {
+            throw new IllegalArgumentException("Interval must be positive!");
+        }
+        if (max.compareTo(min) < 0) {
+            throw new IllegalArgumentException("Max interval is less than min interval!");
+        }
+        this.interval = min.toNanos();
+        this.adaptiveMin = min.toNanos();
+        this.adaptiveInterval = adaptiveMin;
+        this.adaptiveMax = max.toNanos();
+        return this;
+    }
+
+    /**
+     * Protects this When with a circuit breaker. Without circuit breaker, condition that throws an exception is
+     * checked again on the next scheduled check, forever. With circuit breaker, failures (exceptions and
+     * timeouts in parallel mode) are not reported to listeners until specified number of consecutive failures.
+     * Then the breaker opens, listeners are notified about the fallback state and the condition is not checked
+     * until the open interval passes. After that one trial check is made. If it succeeds, normal checking
+     * resumes, otherwise the breaker opens again.
+     *
+     * @param failures number of consecutive failures that opens the breaker
+     * @param openFor  how long the condition is not checked after the breaker opens
+     * @param fallback state that is reported to listeners while the breaker is open
+     * @return instance of itself for fluent method chaining
+     */
+    public When circuitBreaker(int failures, Duration openFor, boolean fallback) {
+        this.circuitBreaker = new CircuitBreaker(failures, openFor.toNanos(), fallback);
+        return this;
+    }
+
+    /**
+     * Cancels this When. Its condition is no longer checked, push condition is unsubscribed and listeners are
+     * not executed anymore, except for a check that is already running. Can be called from any thread,
+     * including listeners of this When.
+     */
+    public void cancel() {
+        if (cancelled) {
+            return;
+        }
+        cancelled = true;
+        if (executor != null) {
+            executor.remove(this);
+        }
+    }
+
+    /**
+     * Returns whether this When was cancelled.
+     *
+     * @return true if this When was cancelled, false otherwise
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Returns metrics of this When: durations of condition checks and listeners and number of failed checks.
+     *
+     * @return metrics of this When
+     */
+    public WhenMetrics getMetrics() {
+        return metrics;
     }
 
     /**
      * Adds specified Runnable or method (using method reference) to list of true state listeners.
      * <p>
-     * Method gets executed many times even when state of condition isn't changed!
+     * Unless edge-triggered mode is used, method gets executed many times even when state of condition
+     * isn't changed!
      *
      * @param method method or Runnable that should be executed when condition state is true
      * @return instance of itself for fluent method chaining
      */
     public When isTrue(Runnable method) {
-        isTrue.add(method);
+        listeners.addTrue(method);
         return this;
     }
 
     /**
      * Adds specified Runnable or method (using method reference) to list of false state listeners.
      * <p>
-     * Method gets executed many times even when state of condition isn't changed!
+     * Unless edge-triggered mode is used, method gets executed many times even when state of condition
+     * isn't changed!
      *
      * @param method method or Runnable that should be executed when condition state is false
      * @return instance of itself for fluent method chaining
      */
     public When isFalse(Runnable method) {
-        isFalse.add(method);
+        listeners.addFalse(method);
         return this;
     }
 
     /**
      * Adds specified StateProcessor to list of listeners.
      * <p>
-     * Method gets executed many times even when state of condition isn't changed!
+     * Method gets executed many times even when state of condition isn't changed! In edge-triggered mode
+     * state processors only receive states that isTrue() and isFalse() listeners would be executed for, except
+     * thresholds, which receive every state so they can count repeated states.
      *
      * @param stateProcessor state processor that is captable of processing / consuming true or false values
      * @return instance of itself for fluent method chaining
      */
     public When stateChanged(StateProcessor stateProcessor) {
-        isTrue.add(() -> stateProcessor.onStateUpdated(true));
-        isFalse.add(() -> stateProcessor.onStateUpdated(false));
+        listeners.add(stateProcessor);
+        return this;
+    }
+
+    /**
+     * Switches this When to edge-triggered mode. In edge-triggered mode isTrue(), isFalse() and stateChanged()
+     * listeners are only executed when the state changes. Thresholds still receive every state, so they can count
+     * repeated states.
+     *
+     * @return instance of itself for fluent method chaining
+     */
+    public When edgeTriggered() {
+        edgeTrigger.enable(0);
+        return this;
+    }
+
+    /**
+     * Switches this When to edge-triggered mode. In edge-triggered mode isTrue(), isFalse() and stateChanged()
+     * listeners are only executed when the state changes or when specified interval passed since they were last
+     * executed and the state is still the same. This can be used to re-assert state of devices that may miss
+     * a command.
+     *
+     * @param reassertEvery interval after which are listeners of unchanged state executed again
+     * @return instance of itself for fluent method chaining
+     */
+    public When edgeTriggered(Duration reassertEvery) {
+        edgeTrigger.enable(reassertEvery.toNanos());
         return this;
     }
 
@@ -132,6 +307,7 @@ public final class When {
     public Threshold threshold(int threshold) {
         Threshold threshold1 = new Threshold(threshold);
         threshold1.parent = this;
+        this.thresholds.add(threshold1);
         this.stateChanged(threshold1);
         return threshold1;
     }
@@ -140,8 +316,12 @@ public final class When {
     public String toString() {
         return "When{" +
                 "condition=" + condition +
-                ", isTrue=" + isTrue +
-                ", isFalse=" + isFalse +
+                ", interval=" + TimeUnit.NANOSECONDS.toMillis(nextInterval()) + "ms" +
+                (adaptiveMax == 0 ? "" : ", adaptive=" + TimeUnit.NANOSECONDS.toMillis(adaptiveMin) + "-"
+                        + TimeUnit.NANOSECONDS.toMillis(adaptiveMax) + "ms") +
+                ", listeners=" + listeners +
+                ", mode=" + edgeTrigger +
+                (circuitBreaker == null ? "" : ", circuitBreaker=" + circuitBreaker) +
                 '}';
     }
 }
@@ -0,0 +1,130 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+import static eu.matejkormuth.autohome.metrics.LatencyHistogram.toMillis;
+
+/**
+ * Metrics of Executor: how long its ticks take, how much they deviate from the planned tick interval (jitter)
+ * and how many Whens took longer to check and notify than half of their interval (overruns).
+ *
+ * @author Matej Kormuth
+ * @since 1.0.0
+ */
+public final class ExecutorMetrics implements ExecutorMetricsMBean {
+
+    private final IntSupplier whens;
+    private final LatencyHistogram tickDuration = new LatencyHistogram();
+    private final LatencyHistogram tickJitter = new LatencyHistogram();
+    private final LongAdder overruns = new LongAdder();
+
+    public ExecutorMetrics(IntSupplier whens) {
+        this.whens = whens;
+    }
+
+    /**
+     * Returns histogram of tick durations.
+     *
+     * @return histogram of tick durations
+     */
+    public LatencyHistogram getTickDuration() {
+        return tickDuration;
+    }
+
+    /**
+     * Returns histogram of absolute differences between planned and actual time between two ticks.
+     *
+     * @return histogram of tick jitter
+     */
+    public LatencyHistogram getTickJitter() {
+        return tickJitter;
+    }
+
+    /**
+     * Records When whose check and listeners took longer than half of its interval.
+     */
+    public void overrun() {
+        overruns.increment();
+    }
+
+    @Override
+    public int getWhens() {
+        return whens.getAsInt();
+    }
+
+    @Override
+    public long getTicks() {
+        return tickDuration.getCount();
+    }
+
+    @Override
+    public long getOverruns() {
+        return overruns.sum();
+    }
+
+    @Override
+    public double getTickMeanMillis() {
+        return toMillis(tickDuration.getMean());
+    }
+
+    @Override
+    public double getTickP99Millis() {
+        return toMillis(tickDuration.getPercentile(99));
+    }
+
+    @Override
+    public double getTickMaxMillis() {
+        return toMillis(tickDuration.getMax());
+    }
+
+    @Override
+    public double getJitterMeanMillis() {
+        return toMillis(tickJitter.getMean());
+    }
+
+    @Override
+    public double getJitterP99Millis() {
+        return toMillis(tickJitter.getPercentile(99));
+    }
+
+    @Override
+    public double getJitterMaxMillis() {
+        return toMillis(tickJitter.getMax());
+    }
+
+    @Override
+    public String toString() {
+        return "ExecutorMetrics{" +
+                "ticks=" + tickDuration +
+                ", jitter=" + tickJitter +
+                ", overruns=" + overruns.sum() +
+                '}';
+    }
+}
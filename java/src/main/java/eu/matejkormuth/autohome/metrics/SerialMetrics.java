@@ -0,0 +1,159 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+import static eu.matejkormuth.autohome.metrics.LatencyHistogram.toMillis;
+
+/**
+ * Metrics of serial device: latency of commands from sending to acknowledgement (including time spent in the
+ * queue), round trip of written commands, number of retransmissions and number of commands that were not
+ * acknowledged.
+ *
+ * @author Matej Kormuth
+ * @since 1.0.0
+ */
+public final class SerialMetrics implements SerialMetricsMBean {
+
+    private final IntSupplier queueSize;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram roundTrip = new LatencyHistogram();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder retransmits = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    public SerialMetrics(IntSupplier queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * Returns histogram of durations from sending command to its acknowledgement.
+     *
+     * @return histogram of command latency
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Returns histogram of durations from writing commands to serial port to reply of the device.
+     *
+     * @return histogram of round trips
+     */
+    public LatencyHistogram getRoundTrip() {
+        return roundTrip;
+    }
+
+    /**
+     * Records command that was not acknowledged in time.
+     */
+    public void timedOut() {
+        timeouts.increment();
+    }
+
+    /**
+     * Records transmission that was written again because it was not acknowledged in time.
+     */
+    public void retransmitted() {
+        retransmits.increment();
+    }
+
+    /**
+     * Records command that could not be written.
+     */
+    public void failed() {
+        errors.increment();
+    }
+
+    @Override
+    public int getQueueSize() {
+        return queueSize.getAsInt();
+    }
+
+    @Override
+    public long getCommands() {
+        return latency.getCount();
+    }
+
+    @Override
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    @Override
+    public long getRetransmits() {
+        return retransmits.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public double getLatencyMeanMillis() {
+        return toMillis(latency.getMean());
+    }
+
+    @Override
+    public double getLatencyP99Millis() {
+        return toMillis(latency.getPercentile(99));
+    }
+
+    @Override
+    public double getLatencyMaxMillis() {
+        return toMillis(latency.getMax());
+    }
+
+    @Override
+    public double getRoundTripMeanMillis() {
+        return toMillis(roundTrip.getMean());
+    }
+
+    @Override
+    public double getRoundTripP99Millis() {
+        return toMillis(roundTrip.getPercentile(99));
+    }
+
+    @Override
+    public double getRoundTripMaxMillis() {
+        return toMillis(roundTrip.getMax());
+    }
+
+    @Override
+    public String toString() {
+        return "SerialMetrics{" +
+                "latency=" + latency +
+                ", roundTrip=" + roundTrip +
+                ", timeouts=" + timeouts.sum() +
+                ", retransmits=" + retransmits.sum() +
+                ", errors=" + errors.sum() +
+                '}';
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import static eu.matejkormuth.autohome.metrics.LatencyHistogram.toMillis;
+
+/**
+ * Metrics of one When: how long its condition checks and listeners take and how often the checks fail.
+ *
+ * @author Matej Kormuth
+ * @since 1.0.0
+ */
+public final class WhenMetrics implements WhenMetricsMBean {
+
+    // Description of the When, evaluated lazily because the When changes while it is being configured.
+    private final Supplier<String> description;
+
+    private final LatencyHistogram checkLatency = new LatencyHistogram();
+    private final LatencyHistogram listenerLatency = new LatencyHistogram();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    public WhenMetrics(Supplier<String> description) {
+        this.description = description;
+    }
+
+    /**
+     * Returns histogram of condition check durations.
+     *
+     * @return histogram of check durations
+     */
+    public LatencyHistogram getCheckLatency() {
+        return checkLatency;
+    }
+
+    /**
+     * Returns histogram of durations of notifying all listeners about one result.
+     *
+     * @return histogram of listener durations
+     */
+    public LatencyHistogram getListenerLatency() {
+        return listenerLatency;
+    }
+
+    /**
+     * Records check that threw an exception.
+     */
+    public void failed() {
+        failures.increment();
+    }
+
+    /**
+     * Records check that did not complete in time.
+     */
+    public void timedOut() {
+        timeouts.increment();
+    }
+
+    @Override
+    public String getWhen() {
+        return description.get();
+    }
+
+    @Override
+    public long getChecks() {
+        return checkLatency.getCount();
+    }
+
+    @Override
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    @Override
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    @Override
+    public double getCheckMeanMillis() {
+        return toMillis(checkLatency.getMean());
+    }
+
+    @Override
+    public double getCheckP50Millis() {
+        return toMillis(checkLatency.getPercentile(50));
+    }
+
+    @Override
+    public double getCheckP99Millis() {
+        return toMillis(checkLatency.getPercentile(99));
+    }
+
+    @Override
+    public double getCheckMaxMillis() {
+        return toMillis(checkLatency.getMax());
+    }
+
+    @Override
+    public long getListenerRuns() {
+        return listenerLatency.getCount();
+    }
+
+    @Override
+    public double getListenerMeanMillis() {
+        return toMillis(listenerLatency.getMean());
+    }
+
+    @Override
+    public double getListenerP99Millis() {
+        return toMillis(listenerLatency.getPercentile(99));
+    }
+
+    @Override
+    public double getListenerMaxMillis() {
+        return toMillis(listenerLatency.getMax());
+    }
+
+    @Override
+    public String toString() {
+        return "WhenMetrics{" +
+                "checks=" + checkLatency +
+                ", listeners=" + listenerLatency +
+                ", failures=" + failures.sum() +
+                ", timeouts=" + timeouts.sum() +
+                '}';
+    }
+}
@@ -0,0 +1,324 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.net;
+
+import eu.matejkormuth.autohome.api.PushCondition;
+import eu.matejkormuth.autohome.conditions.AbstractPushCondition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory index of devices present in local network. The index is built from the kernel ARP table
+ * (/proc/net/arp) or from dnsmasq DHCP lease file and answers whether a device is present without sending
+ * anything to the network. This works even for phones in Wi-Fi power save mode, that drop pings.
+ * <p>
+ * ARP table is re-read in fixed interval (files in /proc can't be watched). Lease file is watched by
+ * WatchService and re-read when it changes.
+ * <p>
+ * ARP table is good at noticing arrivals, but not departures. /proc/net/arp does not show the neighbour state,
+ * entry of device that left stays complete (STALE) until the kernel sends traffic to the device and its
+ * probes fail, or until the garbage collector removes it, which on small networks may not happen for hours.
+ * Pair the presence with a condition that sends traffic to the device (for example ReachabilityProbe) when
+ * departures have to be noticed quickly, failed probes of the kernel mark the entry incomplete.
+ * <p>
+ * Lease file does not notice departures at all. Device is present until its lease expires, which is decided
+ * by the lease time of dnsmasq (often 12 or 24 hours), not by the device leaving. The same pairing applies.
+ * <p>
+ * Presence conditions are push conditions, they notify their subscribers right after the refresh in which
+ * the device appeared or disappeared.
+ *
+ * @author Matej Kormuth
+ * @since 1.0.0
+ */
+public final class NeighborTable implements AutoCloseable {
+
+    // Logger.
+    private static final Logger log = LoggerFactory.getLogger(NeighborTable.class);
+    // Location of kernel ARP table.
+    private static final Path ARP_TABLE = Paths.get("/proc/net/arp");
+    // ARP entry flag of complete entry.
+    private static final int ATF_COM = 0x2;
+
+    // Format of the source file.
+    private enum Format {
+        ARP, DNSMASQ_LEASES
+    }
+
+    private final Path file;
+    private final Format format;
+    private final ScheduledExecutorService scheduler;
+    private volatile WatchService watchService;
+
+    // Current index. Replaced as whole on refresh, so readers never lock.
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    // Conditions created by presence() by lower case address, notified after each refresh.
+    private final Map<String, Presence> conditions = new ConcurrentHashMap<>();
+
+    private NeighborTable(Path file, Format format) {
+        this.file = file;
+        this.format = format;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "NeighborTable-" + file.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Creates table backed by kernel ARP table, that is re-read in specified interval.
+     *
+     * @param refreshInterval interval of re-reading the ARP table
+     * @return new neighbor table
+     */
+    public static NeighborTable arp(Duration refreshInterval) {
+        NeighborTable table = new NeighborTable(ARP_TABLE, Format.ARP);
+        table.scheduler.scheduleWithFixedDelay(table::refresh, 0, refreshInterval.toNanos(), TimeUnit.NANOSECONDS);
+        return table;
+    }
+
+    /**
+     * Creates table backed by dnsmasq lease file, that is re-read each time the file changes. Only leases
+     * that did not expire are present, so device that left is present until its lease expires.
+     *
+     * @param leaseFile path to dnsmasq lease file (for example /var/lib/misc/dnsmasq.leases)
+     * @return new neighbor table
+     * @throws IOException if the file can't be watched
+     */
+    public static NeighborTable dnsmasqLeases(Path leaseFile) throws IOException {
+        NeighborTable table = new NeighborTable(leaseFile, Format.DNSMASQ_LEASES);
+        table.refresh();
+        table.watch();
+        return table;
+    }
+
+    /**
+     * Returns whether device with specified IP address or MAC address (in format aa:bb:cc:dd:ee:ff) is
+     * currently present.
+     *
+     * @param ipOrMac IP address or MAC address of the device
+     * @return true if the device is present, false otherwise
+     */
+    public boolean isPresent(String ipOrMac) {
+        Snapshot current = snapshot;
+        String key = ipOrMac.toLowerCase(Locale.ROOT);
+        return current.byIp.containsKey(key) || current.byMac.containsKey(key);
+    }
+
+    /**
+     * Returns condition that is true while device with specified IP address or MAC address is present.
+     * The condition notifies its subscribers when the presence changes. The same address always returns
+     * the same condition.
+     *
+     * @param ipOrMac IP address or MAC address of the device
+     * @return condition reading this table
+     */
+    public PushCondition presence(String ipOrMac) {
+        return conditions.computeIfAbsent(ipOrMac.toLowerCase(Locale.ROOT), Presence::new);
+    }
+
+    /**
+     * Returns MAC address of device with specified IP address.
+     *
+     * @param ip IP address of the device
+     * @return MAC address or null if the device is not present
+     */
+    public String getMac(String ip) {
+        return snapshot.byIp.get(ip);
+    }
+
+    // Re-reads the file and replaces the index.
+    void refresh() {
+        try {
+            List<String> lines = Files.readAllLines(file, StandardCharsets.US_ASCII);
+            snapshot = format == Format.ARP ? parseArp(lines)
+                    : parseLeases(lines, System.currentTimeMillis() / 1000);
+            for (Presence presence : conditions.values()) {
+                presence.publish(presence.check());
+            }
+        } catch (IOException e) {
+            log.error("Can't read {} because {}!", file, e);
+        } catch (RuntimeException e) {
+            log.error("Can't parse {} because {}!", file, e);
+        }
+    }
+
+    // Starts watching the file for changes.
+    private void watch() throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        watchService = FileSystems.getDefault().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        scheduler.execute(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    WatchKey key = watchService.take();
+                    boolean changed = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        changed |= file.getFileName().equals(event.context());
+                    }
+                    key.reset();
+                    if (changed) {
+                        refresh();
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // Table was closed.
+            }
+        });
+    }
+
+    // Parses /proc/net/arp. Only complete entries are present, malformed lines are skipped.
+    static Snapshot parseArp(List<String> lines) {
+        Map<String, String> byIp = new HashMap<>();
+        Map<String, String> byMac = new HashMap<>();
+        // First line is header.
+        for (int i = 1; i < lines.size(); i++) {
+            String[] columns = lines.get(i).trim().split("\\s+");
+            if (columns.length < 4) {
+                continue;
+            }
+            int flags;
+            try {
+                flags = Integer.decode(columns[2]);
+            } catch (NumberFormatException e) {
+                log.debug("Skipping malformed ARP entry: {}", lines.get(i));
+                continue;
+            }
+            if ((flags & ATF_COM) == 0) {
+                continue;
+            }
+            String ip = columns[0];
+            String mac = columns[3].toLowerCase(Locale.ROOT);
+            byIp.put(ip, mac);
+            byMac.put(mac, ip);
+        }
+        return new Snapshot(byIp, byMac);
+    }
+
+    // Parses dnsmasq lease file. Lines have format: expiry mac ip hostname client-id. Expiry 0 means infinite.
+    // Malformed lines are skipped.
+    static Snapshot parseLeases(List<String> lines, long nowSeconds) {
+        Map<String, String> byIp = new HashMap<>();
+        Map<String, String> byMac = new HashMap<>();
+        for (String line : lines) {
+            String[] columns = line.trim().split("\\s+");
+            if (columns.length < 3) {
+                continue;
+            }
+            long expiry;
+            try {
+                expiry = Long.parseLong(columns[0]);
+            } catch (NumberFormatException e) {
+                log.debug("Skipping malformed lease: {}", line);
+                continue;
+            }
+            if (expiry != 0 && expiry < nowSeconds) {
+                continue;
+            }
+            String mac = columns[1].toLowerCase(Locale.ROOT);
+            String ip = columns[2];
+            byIp.put(ip, mac);
+            byMac.put(mac, ip);
+        }
+        return new Snapshot(byIp, byMac);
+    }
+
+    /**
+     * Stops refreshing of this table.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                log.error("Can't close watch service!", e);
+            }
+        }
+    }
+
+    // Presence of one device.
+    private final class Presence extends AbstractPushCondition {
+        private final String ipOrMac;
+
+        Presence(String ipOrMac) {
+            this.ipOrMac = ipOrMac;
+        }
+
+        @Override
+        public boolean check() {
+            return isPresent(ipOrMac);
+        }
+
+        @Override
+        protected void publish(boolean value) {
+            super.publish(value);
+        }
+
+        @Override
+        public String toString() {
+            return "NeighborTable.presence(" + ipOrMac + ")";
+        }
+    }
+
+    // Immutable index of present devices.
+    static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(Collections.emptyMap(), Collections.emptyMap());
+
+        // MAC addresses by IP address.
+        final Map<String, String> byIp;
+        // IP addresses by MAC address.
+        final Map<String, String> byMac;
+
+        Snapshot(Map<String, String> byIp, Map<String, String> byMac) {
+            this.byIp = byIp;
+            this.byMac = byMac;
+        }
+    }
+}
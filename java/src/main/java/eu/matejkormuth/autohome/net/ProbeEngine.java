@@ -0,0 +1,338 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.net;
+
+import eu.matejkormuth.autohome.api.PushCondition;
+import eu.matejkormuth.autohome.conditions.AbstractPushCondition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Probes reachability of many hosts at once. In each round the engine starts non-blocking TCP connections
+ * to all registered hosts and waits for all of them on one Selector until the timeout. Checking 100 hosts
+ * therefore takes roughly one timeout.
+ * <p>
+ * Conditions created by isReachable() do not probe anything, they only read the result of the last round.
+ * Until the first round completes they return false. They are push conditions, so they notify their
+ * subscribers right after the round in which the host became reachable or unreachable.
+ *
+ * @author Matej Kormuth
+ * @see ReachabilityProbe
+ * @since 1.0.0
+ */
+public final class ProbeEngine implements AutoCloseable {
+
+    // Logger.
+    private static final Logger log = LoggerFactory.getLogger(ProbeEngine.class);
+    // Default TCP port to connect to.
+    private static final int DEFAULT_PORT = 7;
+    // How long is resolved address of the host reused.
+    static final long RESOLVE_INTERVAL = TimeUnit.MINUTES.toNanos(5);
+
+    // Registered targets by "hostname:port".
+    private final Map<String, Target> targets = new ConcurrentHashMap<>();
+    // Timeout of one round in nanoseconds.
+    private final long timeout;
+    // Selector used to wait for connections. Only accessed from probing thread.
+    private final Selector selector;
+    // Thread that runs the rounds.
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Creates new engine that probes all registered hosts in specified interval.
+     *
+     * @param interval delay between end of one round and start of the next one
+     * @param timeout  how long to wait for responses in one round
+     * @throws IOException if the selector can't be opened
+     */
+    public ProbeEngine(Duration interval, Duration timeout) throws IOException {
+        this(timeout);
+        scheduler.scheduleWithFixedDelay(this::probeAllSafely, 0, interval.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    // Creates engine that does not probe until probeAll() is called.
+    ProbeEngine(Duration timeout) throws IOException {
+        this.timeout = timeout.toNanos();
+        this.selector = Selector.open();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ProbeEngine");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns condition that is true when specified host responded in the last round. The host is connected
+     * to on port 7 (echo), refused connection means the host is reachable.
+     *
+     * @param hostname hostname or IP address of the host
+     * @return condition reading result of the last round
+     */
+    public PushCondition isReachable(String hostname) {
+        return isReachable(hostname, DEFAULT_PORT);
+    }
+
+    /**
+     * Returns condition that is true when specified host responded in the last round.
+     *
+     * @param hostname hostname or IP address of the host
+     * @param port     TCP port to connect to, it does not need to be open
+     * @return condition reading result of the last round
+     */
+    public PushCondition isReachable(String hostname, int port) {
+        Target target = register(hostname, port);
+        Reachability condition = new Reachability(target);
+        target.conditions.add(condition);
+        return condition;
+    }
+
+    /**
+     * Returns result of the last round for specified host.
+     *
+     * @param hostname hostname or IP address of the host
+     * @param port     TCP port the host is probed on
+     * @return result of the last round, or unreachable if the host is not registered or was not probed yet
+     */
+    public ProbeResult getResult(String hostname, int port) {
+        Target target = targets.get(hostname + ":" + port);
+        return target == null ? ProbeResult.UNREACHABLE : target.result;
+    }
+
+    // Registers specified host, if not registered yet.
+    Target register(String hostname, int port) {
+        return targets.computeIfAbsent(hostname + ":" + port, key -> new Target(key, hostname, port));
+    }
+
+    // Runs one round and logs unexpected errors, so the schedule is not cancelled.
+    private void probeAllSafely() {
+        try {
+            probeAll();
+        } catch (Exception e) {
+            log.error("Can't probe hosts because {}!", e);
+        }
+    }
+
+    // Probes all registered hosts at once. Only called from probing thread.
+    void probeAll() throws IOException {
+        int pending = 0;
+        long start = System.nanoTime();
+        for (Target target : targets.values()) {
+            if (connect(target, start)) {
+                pending++;
+            }
+        }
+
+        long deadline = start + timeout;
+        while (pending > 0) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                break;
+            }
+            selector.select(remaining);
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                finishConnect(key);
+                pending--;
+            }
+        }
+
+        // Hosts that did not respond in time are unreachable.
+        for (SelectionKey key : selector.keys()) {
+            if (key.isValid()) {
+                ((Target) key.attachment()).result = ProbeResult.UNREACHABLE;
+                close(key);
+            }
+        }
+        // Remove cancelled keys from the selector.
+        selector.selectNow();
+
+        for (Target target : targets.values()) {
+            for (Reachability condition : target.conditions) {
+                condition.publish(target.result.isReachable());
+            }
+        }
+    }
+
+    // Starts connecting to specified target. Returns true if the result is not known yet.
+    private boolean connect(Target target, long start) {
+        InetSocketAddress address = target.resolve(start);
+        if (address.isUnresolved()) {
+            log.warn("Can't resolve {}!", target.hostname);
+            target.result = ProbeResult.UNREACHABLE;
+            return false;
+        }
+
+        SocketChannel channel = null;
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            target.start = start;
+            if (channel.connect(address)) {
+                target.result = ProbeResult.reachable(System.nanoTime() - start);
+                channel.close();
+                return false;
+            }
+            channel.register(selector, SelectionKey.OP_CONNECT, target);
+            return true;
+        } catch (IOException e) {
+            target.result = resultOf(e, target);
+            closeQuietly(channel);
+            return false;
+        }
+    }
+
+    // Finishes connection of specified key and stores the result.
+    private void finishConnect(SelectionKey key) {
+        Target target = (Target) key.attachment();
+        try {
+            ((SocketChannel) key.channel()).finishConnect();
+            target.result = ProbeResult.reachable(System.nanoTime() - target.start);
+        } catch (IOException e) {
+            target.result = resultOf(e, target);
+        }
+        close(key);
+    }
+
+    // Returns result of probe that failed with specified exception.
+    private static ProbeResult resultOf(IOException e, Target target) {
+        // Connection refused means the host is up.
+        if (e instanceof ConnectException) {
+            return ProbeResult.reachable(System.nanoTime() - target.start);
+        }
+        return ProbeResult.UNREACHABLE;
+    }
+
+    private static void close(SelectionKey key) {
+        key.cancel();
+        closeQuietly((SocketChannel) key.channel());
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("Can't close channel: {}", e.toString());
+        }
+    }
+
+    /**
+     * Stops probing and closes the selector.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.SECONDS);
+            selector.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.error("Can't close selector!", e);
+        }
+    }
+
+    // Condition reading result of one target.
+    private static final class Reachability extends AbstractPushCondition {
+        private final Target target;
+
+        Reachability(Target target) {
+            this.target = target;
+        }
+
+        @Override
+        public boolean check() {
+            return target.result.isReachable();
+        }
+
+        @Override
+        protected void publish(boolean value) {
+            super.publish(value);
+        }
+
+        @Override
+        public String toString() {
+            return "ProbeEngine.isReachable(" + target.key + ")";
+        }
+    }
+
+    // Probed host with result of the last round.
+    static final class Target {
+        final String key;
+        final String hostname;
+        final int port;
+        // Start of current connection attempt. Only accessed from probing thread.
+        long start;
+        // Resolved address of the host or null if it has to be resolved on the next round. Only accessed
+        // from probing thread.
+        private InetSocketAddress address;
+        // When was the address resolved.
+        private long resolvedAt;
+        volatile ProbeResult result = ProbeResult.UNREACHABLE;
+        // Conditions reading result of this target.
+        final List<Reachability> conditions = new CopyOnWriteArrayList<>();
+
+        Target(String key, String hostname, int port) {
+            this.key = key;
+            this.hostname = hostname;
+            this.port = port;
+        }
+
+        // Returns resolved address of the host, resolving it again if it is too old. Resolving blocks the whole
+        // round, so it is done only once per RESOLVE_INTERVAL.
+        InetSocketAddress resolve(long now) {
+            InetSocketAddress address = this.address;
+            if (address == null || now - resolvedAt >= RESOLVE_INTERVAL) {
+                address = new InetSocketAddress(hostname, port);
+                resolvedAt = now;
+                this.address = address.isUnresolved() ? null : address;
+            }
+            return address;
+        }
+    }
+}
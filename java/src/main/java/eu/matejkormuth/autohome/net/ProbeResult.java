@@ -0,0 +1,93 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.net;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Result of one reachability probe of a host.
+ *
+ * @author Matej Kormuth
+ * @since 1.0.0
+ */
+public final class ProbeResult {
+
+    /**
+     * Result of probe that did not get any response.
+     */
+    public static final ProbeResult UNREACHABLE = new ProbeResult(false, -1);
+
+    private final boolean reachable;
+    private final long roundTripNanos;
+
+    private ProbeResult(boolean reachable, long roundTripNanos) {
+        this.reachable = reachable;
+        this.roundTripNanos = roundTripNanos;
+    }
+
+    /**
+     * Creates result of probe that got response from the host after specified time.
+     *
+     * @param roundTripNanos round trip time in nanoseconds
+     * @return result of successful probe
+     */
+    public static ProbeResult reachable(long roundTripNanos) {
+        return new ProbeResult(true, roundTripNanos);
+    }
+
+    /**
+     * Returns whether the host responded to the probe.
+     *
+     * @return true if the host is reachable, false otherwise
+     */
+    public boolean isReachable() {
+        return reachable;
+    }
+
+    /**
+     * Returns round trip time of the probe in nanoseconds.
+     *
+     * @return round trip time in nanoseconds or -1 if the host is not reachable
+     */
+    public long getRoundTripNanos() {
+        return roundTripNanos;
+    }
+
+    /**
+     * Returns round trip time of the probe in milliseconds.
+     *
+     * @return round trip time in milliseconds or -1 if the host is not reachable
+     */
+    public double getRoundTripMillis() {
+        return reachable ? roundTripNanos / (double) TimeUnit.MILLISECONDS.toNanos(1) : -1;
+    }
+
+    @Override
+    public String toString() {
+        return reachable ? "ProbeResult{reachable, rtt=" + getRoundTripMillis() + "ms}" : "ProbeResult{unreachable}";
+    }
+}
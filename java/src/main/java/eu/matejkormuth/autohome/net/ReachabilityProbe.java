@@ -0,0 +1,149 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.net;
+
+import eu.matejkormuth.autohome.api.Condition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Condition that checks whether a host is reachable by opening TCP connection to it. It runs in-process on
+ * any platform, does not need root privileges and does not spawn any process.
+ * <p>
+ * Host is reachable when the connection is accepted or refused, because refusing requires the host to
+ * respond. Host is unreachable when the connection times out or no route to the host exists. Round trip
+ * time of the last probe is available from getLastResult().
+ * <p>
+ * Resolved address of the host is reused for 5 minutes, so probes do not query DNS each time. Hostname
+ * that could not be resolved is resolved again on the next probe.
+ *
+ * @author Matej Kormuth
+ * @since 1.0.0
+ */
+public final class ReachabilityProbe implements Condition {
+
+    // Logger.
+    private static final Logger log = LoggerFactory.getLogger(ReachabilityProbe.class);
+    // How long is resolved address of the host reused.
+    private static final long RESOLVE_INTERVAL = TimeUnit.MINUTES.toNanos(5);
+
+    private final String hostname;
+    private final int port;
+    private final int timeout;
+    // Resolved address of the host or null if it has to be resolved on the next probe.
+    private volatile InetSocketAddress address = null;
+    // When was the address resolved.
+    private volatile long resolvedAt = 0;
+
+    private volatile ProbeResult lastResult = ProbeResult.UNREACHABLE;
+
+    /**
+     * Creates new probe of specified host.
+     *
+     * @param hostname hostname or IP address of the host
+     * @param port     TCP port to connect to, it does not need to be open
+     * @param timeout  timeout of the probe in ms
+     */
+    public ReachabilityProbe(String hostname, int port, int timeout) {
+        this.hostname = hostname;
+        this.port = port;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Probes the host and returns the result.
+     *
+     * @return result of the probe
+     */
+    public ProbeResult probe() {
+        ProbeResult result;
+        InetSocketAddress address = resolve();
+        if (address.isUnresolved()) {
+            log.warn("Can't resolve {}!", hostname);
+            result = ProbeResult.UNREACHABLE;
+        } else {
+            long start = System.nanoTime();
+            try (Socket socket = new Socket()) {
+                socket.connect(address, timeout);
+                result = ProbeResult.reachable(System.nanoTime() - start);
+            } catch (ConnectException e) {
+                // Connection refused means the host is up. Unreachable host or network is reported as
+                // NoRouteToHostException or SocketException, which are not ConnectException.
+                result = ProbeResult.reachable(System.nanoTime() - start);
+            } catch (SocketTimeoutException e) {
+                result = ProbeResult.UNREACHABLE;
+            } catch (IOException e) {
+                log.debug("Probe of {} failed: {}", hostname, e.toString());
+                result = ProbeResult.UNREACHABLE;
+            }
+        }
+        lastResult = result;
+        return result;
+    }
+
+    // Returns resolved address of the host, resolving it again if it is too old.
+    private InetSocketAddress resolve() {
+        InetSocketAddress address = this.address;
+        long now = System.nanoTime();
+        if (address == null || now - resolvedAt >= RESOLVE_INTERVAL) {
+            address = new InetSocketAddress(hostname, port);
+            resolvedAt = now;
+            this.address = address.isUnresolved() ? null : address;
+        }
+        return address;
+    }
+
+    @Override
+    public boolean check() {
+        return probe().isReachable();
+    }
+
+    /**
+     * Returns result of the last probe.
+     *
+     * @return result of the last probe, unreachable if no probe was done yet
+     */
+    public ProbeResult getLastResult() {
+        return lastResult;
+    }
+
+    @Override
+    public String toString() {
+        return "ReachabilityProbe{" +
+                "hostname='" + hostname + '\'' +
+                ", port=" + port +
+                ", timeout=" + timeout +
+                '}';
+    }
+}
@@ -0,0 +1,304 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.switches;
+
+import eu.matejkormuth.autohome.api.AsyncSwitch;
+import eu.matejkormuth.autohome.comm.ArduinoCOM;
+import eu.matejkormuth.autohome.comm.LineListener;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * Switch of LEDs controlled by IR LED of the Arduino. Futures of its actions complete when the device
+ * acknowledges the command.
+ * <p>
+ * The switch keeps believed power of the LEDs and does not send commands that would not change it or the
+ * intensity level believed by ArduinoCOM. When a command fails or the device restarts, the state is no longer
+ * believed to be synchronized and the next command is always sent. Power command is sent again after the
+ * restart, intensity is calibrated with its next change. Reading the state does not lock.
+ * <p>
+ * Fades started directly on ArduinoCOM are not tracked by this switch.
+ *
+ * @author Matej Kormuth
+ * @since 1.0.0
+ */
+public class ArduinoLedSwitch implements AsyncSwitch {
+
+    // Line printed by the device after it (re)starts.
+    private static final String READY = "Ready!";
+    // Value of power that was never set.
+    private static final int UNKNOWN = -1;
+
+    private final Device device;
+    // Interval in nanoseconds after which is the same power command sent again, zero to never send it again.
+    private final long refreshInterval;
+    // Executor of resyncs after the device restarts.
+    private final Executor resyncExecutor;
+    // Serializes actions, so the commands are sent in the same order as the state changes.
+    private final Object lock = new Object();
+    // Believed state of the device.
+    private final AtomicReference<State> state = new AtomicReference<>(State.INITIAL);
+
+    public ArduinoLedSwitch(ArduinoCOM arduino) {
+        this(arduino, Duration.ZERO);
+    }
+
+    /**
+     * Creates new switch of LEDs controlled by specified device. The device can't tell whether the LEDs received
+     * IR code, so power command can be sent again when the same state is requested after refresh interval.
+     *
+     * @param arduino         device with the IR LED
+     * @param refreshInterval interval after which is the same power command sent again, zero to never send it
+     */
+    public ArduinoLedSwitch(ArduinoCOM arduino, Duration refreshInterval) {
+        this(new ComDevice(arduino), refreshInterval, Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "ArduinoLedSwitch-resync");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    ArduinoLedSwitch(Device device, Duration refreshInterval, Executor resyncExecutor) {
+        if (refreshInterval.isNegative()) {
+            throw new IllegalArgumentException("Refresh interval can't be negative!");
+        }
+        this.device = device;
+        this.refreshInterval = refreshInterval.toNanos();
+        this.resyncExecutor = resyncExecutor;
+        device.subscribe(this::onLine);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> turnOnAsync() {
+        return setPower(1);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> turnOffAsync() {
+        return setPower(0);
+    }
+
+    /**
+     * Changes intensity of the LEDs to specified level, unless they are believed to have it. If the believed
+     * level is not synchronized, the intensity is calibrated by going through the lowest level.
+     *
+     * @param level intensity level, from 0 to ArduinoCOM.MAX_INTENSITY_LEVEL
+     * @return future completed with true if the believed level changed, false if the LEDs already had it
+     */
+    public CompletableFuture<Boolean> setIntensityLevelAsync(int level) {
+        if (level < 0 || level > ArduinoCOM.MAX_INTENSITY_LEVEL) {
+            throw new IllegalArgumentException("Intensity level must be from 0 to "
+                    + ArduinoCOM.MAX_INTENSITY_LEVEL + "!");
+        }
+
+        synchronized (lock) {
+            State previous = state.get();
+            int believed = device.getIntensityLevel();
+            if (previous.intensitySynced && believed == level) {
+                return CompletableFuture.completedFuture(false);
+            }
+
+            state.updateAndGet(State::intensitySent);
+            CompletableFuture<String> command = previous.intensitySynced ? device.setIntensityLevel(level)
+                    : device.calibrateIntensityLevel(level);
+            return track(command, State::intensityLost).thenApply(reply -> believed != level);
+        }
+    }
+
+    /**
+     * Marks believed state as not synchronized with the device and sends the power command again. Intensity is
+     * calibrated with its next change. Called automatically when the device restarts.
+     *
+     * @return future completed when the power command is acknowledged, or immediately if the power was never set
+     */
+    public CompletableFuture<Void> resync() {
+        synchronized (lock) {
+            State current = state.updateAndGet(State::lost);
+            if (current.power == UNKNOWN) {
+                return CompletableFuture.completedFuture(null);
+            }
+            return setPower(current.power).thenApply(changed -> null);
+        }
+    }
+
+    @Override
+    public boolean getState() {
+        return state.get().power == 1;
+    }
+
+    /**
+     * Returns intensity level of the LEDs believed by ArduinoCOM.
+     *
+     * @return intensity level, from 0 to ArduinoCOM.MAX_INTENSITY_LEVEL
+     */
+    public int getIntensityLevel() {
+        return device.getIntensityLevel();
+    }
+
+    // Sends power command, unless the LEDs are believed to have specified power.
+    private CompletableFuture<Boolean> setPower(int power) {
+        synchronized (lock) {
+            long now = System.nanoTime();
+            State previous = state.get();
+            if (previous.powerSynced && previous.power == power
+                    && (refreshInterval == 0 || now - previous.powerSent < refreshInterval)) {
+                return CompletableFuture.completedFuture(false);
+            }
+
+            state.updateAndGet(s -> s.withPower(power, now));
+            CompletableFuture<String> command = power == 1 ? device.turnLedOn() : device.turnLedOff();
+            return track(command, State::powerLost).thenApply(reply -> previous.power != power);
+        }
+    }
+
+    // Marks the state as not synchronized when specified command fails.
+    private CompletableFuture<String> track(CompletableFuture<String> command, UnaryOperator<State> lost) {
+        return command.whenComplete((reply, e) -> {
+            if (e != null) {
+                state.updateAndGet(lost);
+            }
+        });
+    }
+
+    // Resyncs the state when the device restarts. Called on event thread of serial port, which must not wait
+    // for free space in the command queue.
+    private void onLine(CharSequence line) {
+        if (READY.contentEquals(line)) {
+            resyncExecutor.execute(this::resync);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ArduinoLedSwitch{" + state.get() + ", intensity=" + device.getIntensityLevel() + '}';
+    }
+
+    // Operations of ArduinoCOM used by the switch.
+    interface Device {
+        CompletableFuture<String> turnLedOn();
+
+        CompletableFuture<String> turnLedOff();
+
+        CompletableFuture<String> setIntensityLevel(int level);
+
+        CompletableFuture<String> calibrateIntensityLevel(int level);
+
+        int getIntensityLevel();
+
+        void subscribe(LineListener listener);
+    }
+
+    // Device backed by ArduinoCOM.
+    private static final class ComDevice implements Device {
+        private final ArduinoCOM arduino;
+
+        ComDevice(ArduinoCOM arduino) {
+            this.arduino = arduino;
+        }
+
+        @Override
+        public CompletableFuture<String> turnLedOn() {
+            return arduino.turnLedOn();
+        }
+
+        @Override
+        public CompletableFuture<String> turnLedOff() {
+            return arduino.turnLedOff();
+        }
+
+        @Override
+        public CompletableFuture<String> setIntensityLevel(int level) {
+            return arduino.setIntensityLevel(level);
+        }
+
+        @Override
+        public CompletableFuture<String> calibrateIntensityLevel(int level) {
+            return arduino.calibrateIntensityLevel(level);
+        }
+
+        @Override
+        public int getIntensityLevel() {
+            return arduino.getIntensityLevel();
+        }
+
+        @Override
+        public void subscribe(LineListener listener) {
+            arduino.subscribe(listener);
+        }
+    }
+
+    // Immutable believed state of the device. Intensity level itself is believed by ArduinoCOM.
+    private static final class State {
+        static final State INITIAL = new State(UNKNOWN, false, false, 0);
+
+        // 1 if the LEDs are on, 0 if off, UNKNOWN if never set.
+        final int power;
+        // Whether the device is believed to have the power and the intensity level of ArduinoCOM.
+        final boolean powerSynced;
+        final boolean intensitySynced;
+        // Time (System.nanoTime()) when the power command was sent.
+        final long powerSent;
+
+        State(int power, boolean powerSynced, boolean intensitySynced, long powerSent) {
+            this.power = power;
+            this.powerSynced = powerSynced;
+            this.intensitySynced = intensitySynced;
+            this.powerSent = powerSent;
+        }
+
+        State withPower(int power, long sent) {
+            return new State(power, true, intensitySynced, sent);
+        }
+
+        State intensitySent() {
+            return new State(power, powerSynced, true, powerSent);
+        }
+
+        State powerLost() {
+            return new State(power, false, intensitySynced, powerSent);
+        }
+
+        State intensityLost() {
+            return new State(power, powerSynced, false, powerSent);
+        }
+
+        State lost() {
+            return new State(power, false, false, powerSent);
+        }
+
+        @Override
+        public String toString() {
+            return "power=" + (power == UNKNOWN ? "?" : power == 1 ? "on" : "off") + (powerSynced ? "" : "*")
+                    + (intensitySynced ? "" : ", intensity*");
+        }
+    }
+}
@@ -26,34 +26,39 @@
  */
 package eu.matejkormuth.autohome.switches;
 
-import eu.matejkormuth.autohome.api.Switch;
+import eu.matejkormuth.autohome.api.AsyncSwitch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class FakeSwitch implements Switch {
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class FakeSwitch implements AsyncSwitch {
 
     private static final Logger log = LoggerFactory.getLogger(FakeSwitch.class);
 
     private final String name;
-    private boolean state = false;
+    private final AtomicBoolean state = new AtomicBoolean(false);
 
     public FakeSwitch(String name) {
         this.name = name;
     }
 
     @Override
-    public void turnOn() {
-        this.state = true;
+    public CompletableFuture<Boolean> turnOnAsync() {
+        boolean changed = state.compareAndSet(false, true);
         log.info("Switch {} has been turned on.", this.name);
+        return CompletableFuture.completedFuture(changed);
     }
 
     @Override
-    public void turnOff() {
-        this.state = false;
+    public CompletableFuture<Boolean> turnOffAsync() {
+        boolean changed = state.compareAndSet(true, false);
         log.info("Switch {} has been turner off.", this.name);
+        return CompletableFuture.completedFuture(changed);
     }
 
     public boolean getState() {
-        return this.state;
+        return this.state.get();
     }
 }
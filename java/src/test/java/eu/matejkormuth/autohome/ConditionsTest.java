@@ -30,6 +30,8 @@ import eu.matejkormuth.autohome.api.Condition;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
 import java.util.function.Supplier;
 
 import static org.junit.Assert.assertFalse;
@@ -187,4 +189,79 @@ public class ConditionsTest {
         assertTrue(condition.check()); // 8
         assertFalse(condition.check()); // 5;
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testPrimitiveDouble() throws Exception {
+        double[] nums = new double[]{2, 10, 5};
+        int[] i = new int[]{0};
+        DoubleSupplier doubleSupplier = () -> nums[i[0]++ % nums.length];
+
+        Condition lessThan = Conditions.lessThan(5, doubleSupplier);
+        assertTrue(lessThan.check()); // 2
+        assertFalse(lessThan.check()); // 10
+        assertFalse(lessThan.check()); // 5
+
+        Condition greaterThanOrEqual = Conditions.greaterThanOrEqual(5, doubleSupplier);
+        assertFalse(greaterThanOrEqual.check()); // 2
+        assertTrue(greaterThanOrEqual.check()); // 10
+        assertTrue(greaterThanOrEqual.check()); // 5
+
+        Condition equalTo = Conditions.equalTo(5, doubleSupplier);
+        assertFalse(equalTo.check()); // 2
+        assertFalse(equalTo.check()); // 10
+        assertTrue(equalTo.check()); // 5
+    }
+
+    @Test
+    public void testPrimitiveLong() throws Exception {
+        long[] nums = new long[]{2, 10, 5};
+        int[] i = new int[]{0};
+        LongSupplier longSupplier = () -> nums[i[0]++ % nums.length];
+
+        Condition greaterThan = Conditions.greaterThan(5, longSupplier);
+        assertFalse(greaterThan.check()); // 2
+        assertTrue(greaterThan.check()); // 10
+        assertFalse(greaterThan.check()); // 5
+
+        Condition equalTo = Conditions.equalTo(5L, () -> 5L);
+        assertTrue(equalTo.check());
+    }
+
+    @Test
+    public void testAboveWithHysteresis() throws Exception {
+        double[] nums = new double[]{20, 24.5, 25.5, 24, 23, 22.5, 21.5, 23};
+        int[] i = new int[]{0};
+
+        Condition condition = Conditions.aboveWithHysteresis(25, 22, () -> nums[i[0]++]);
+
+        assertFalse(condition.check()); // 20
+        assertFalse(condition.check()); // 24.5
+        assertTrue(condition.check()); // 25.5
+        assertTrue(condition.check()); // 24
+        assertTrue(condition.check()); // 23
+        assertTrue(condition.check()); // 22.5
+        assertFalse(condition.check()); // 21.5
+        assertFalse(condition.check()); // 23
+    }
+
+    @Test
+    public void testBelowWithHysteresis() throws Exception {
+        double[] nums = new double[]{20, 18.5, 17.5, 18, 19.5, 20.5, 19};
+        int[] i = new int[]{0};
+
+        Condition condition = Conditions.belowWithHysteresis(18, 20, () -> nums[i[0]++]);
+
+        assertFalse(condition.check()); // 20
+        assertFalse(condition.check()); // 18.5
+        assertTrue(condition.check()); // 17.5
+        assertTrue(condition.check()); // 18
+        assertTrue(condition.check()); // 19.5
+        assertFalse(condition.check()); // 20.5
+        assertFalse(condition.check()); // 19
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testHysteresisInvalidBand() throws Exception {
+        Conditions.aboveWithHysteresis(20, 25, () -> 0);
+    }
+}
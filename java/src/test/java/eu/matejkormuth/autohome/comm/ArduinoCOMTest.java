@@ -0,0 +1,198 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.comm;
+
+import jssc.SerialPort;
+import jssc.SerialPortEvent;
+import jssc.SerialPortEventListener;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ArduinoCOMTest {
+
+    @Test
+    public void testFirstSyncIsLost() throws Exception {
+        FakePort port = new FakePort();
+        ArduinoCOM arduino = new ArduinoCOM(port, 64, BackpressurePolicy.BLOCK, SerialProtocol.TEXT, 4);
+        try {
+            // Device was still in bootloader and never answers the first SYNC.
+            assertEquals("SYNC\n", port.nextWritten());
+            port.receive("Ready!");
+            assertEquals("SYNC was not sent again", "SYNC\n", port.nextWritten());
+            port.receive("Synchronized!");
+
+            CompletableFuture<String> on = arduino.turnLedOn();
+            assertEquals("0 LED_ON\n", port.nextWritten());
+            port.receive("OK 0");
+            assertEquals("OK 0", on.get(1, TimeUnit.SECONDS));
+        } finally {
+            arduino.close();
+        }
+    }
+
+    @Test
+    public void testRestartResyncs() throws Exception {
+        FakePort port = new FakePort();
+        ArduinoCOM arduino = new ArduinoCOM(port, 64, BackpressurePolicy.BLOCK, SerialProtocol.TEXT, 4);
+        try {
+            assertEquals("SYNC\n", port.nextWritten());
+            port.receive("Synchronized!");
+            CompletableFuture<String> on = arduino.turnLedOn();
+            assertEquals("0 LED_ON\n", port.nextWritten());
+            port.receive("OK 0");
+            on.get(1, TimeUnit.SECONDS);
+
+            // Device restarts before it acknowledges the command.
+            CompletableFuture<String> off = arduino.turnLedOff();
+            assertEquals("1 LED_OFF\n", port.nextWritten());
+            port.receive("Ready!");
+            assertEquals("SYNC\n", port.nextWritten());
+            try {
+                off.get(1, TimeUnit.SECONDS);
+                fail("command in flight did not fail");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+
+            // Acknowledgement before the device confirms SYNC is ignored.
+            port.receive("OK 1");
+            port.receive("Synchronized!");
+            off = arduino.turnLedOff();
+            assertEquals("sequence numbers did not start from zero", "0 LED_OFF\n", port.nextWritten());
+            port.receive("OK 0");
+            assertEquals("OK 0", off.get(1, TimeUnit.SECONDS));
+        } finally {
+            arduino.close();
+        }
+    }
+
+    @Test
+    public void testInvalidFadeChangesNothing() throws Exception {
+        FakePort port = new FakePort();
+        ArduinoCOM arduino = new ArduinoCOM(port, 64, BackpressurePolicy.BLOCK, SerialProtocol.TEXT, 4);
+        try {
+            assertEquals("SYNC\n", port.nextWritten());
+            port.receive("Synchronized!");
+            try {
+                // Interval between the steps would be longer than the device supports.
+                arduino.fadeLedOn(Duration.ofHours(2), FadeCurve.LINEAR);
+                fail("invalid fade was started");
+            } catch (IllegalArgumentException expected) {
+            }
+
+            // LEDs are still believed to be off, so there is nothing to fade.
+            arduino.fadeLedOff().get(1, TimeUnit.SECONDS);
+            arduino.turnLedOn();
+            assertEquals("commands of invalid fade were sent", "0 LED_ON\n", port.nextWritten());
+        } finally {
+            arduino.close();
+        }
+    }
+
+    // Serial port that records written lines and receives lines passed by the test.
+    private static final class FakePort extends SerialPort {
+        private final BlockingQueue<String> written = new LinkedBlockingQueue<>();
+        private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+        private SerialPortEventListener listener;
+
+        FakePort() {
+            super("FAKE");
+        }
+
+        // Returns the next written transmission.
+        String nextWritten() throws InterruptedException {
+            String transmission = written.poll(1, TimeUnit.SECONDS);
+            if (transmission == null) {
+                fail("nothing was written");
+            }
+            return transmission;
+        }
+
+        // Receives specified line, the listener is called on the calling thread.
+        void receive(String line) {
+            byte[] bytes = (line + "\n").getBytes(StandardCharsets.US_ASCII);
+            synchronized (received) {
+                received.write(bytes, 0, bytes.length);
+            }
+            listener.serialEvent(new SerialPortEvent(getPortName(), SerialPortEvent.RXCHAR, bytes.length));
+        }
+
+        @Override
+        public boolean openPort() {
+            return true;
+        }
+
+        @Override
+        public boolean setParams(int baudRate, int dataBits, int stopBits, int parity) {
+            return true;
+        }
+
+        @Override
+        public void addEventListener(SerialPortEventListener listener, int mask) {
+            this.listener = listener;
+        }
+
+        @Override
+        public boolean writeBytes(byte[] buffer) {
+            written.add(new String(buffer, StandardCharsets.US_ASCII));
+            return true;
+        }
+
+        @Override
+        public int getInputBufferBytesCount() {
+            synchronized (received) {
+                return received.size();
+            }
+        }
+
+        @Override
+        public byte[] readBytes(int byteCount) {
+            synchronized (received) {
+                byte[] bytes = received.toByteArray();
+                received.reset();
+                return bytes;
+            }
+        }
+
+        @Override
+        public boolean isOpened() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.comm;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CommandQueueTest {
+
+    @Test
+    public void testFifo() throws Exception {
+        CommandQueue queue = new CommandQueue(4, BackpressurePolicy.FAIL);
+        PendingCommand on = new PendingCommand(ArduinoCommand.LED_ON);
+        PendingCommand white = new PendingCommand(ArduinoCommand.LED_INTENSITY_PLUS);
+        queue.offer(on);
+        queue.offer(white);
+        assertSame(on, queue.take());
+        assertSame(white, queue.take());
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testFail() throws Exception {
+        CommandQueue queue = new CommandQueue(1, BackpressurePolicy.FAIL);
+        queue.offer(new PendingCommand(ArduinoCommand.LED_ON));
+        queue.offer(new PendingCommand(ArduinoCommand.LED_COLOR_WHITE));
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        CommandQueue queue = new CommandQueue(1, BackpressurePolicy.DROP_OLDEST);
+        PendingCommand oldest = new PendingCommand(ArduinoCommand.LED_ON);
+        PendingCommand newest = new PendingCommand(ArduinoCommand.LED_COLOR_WHITE);
+        queue.offer(oldest);
+        queue.offer(newest);
+        assertTrue("oldest command was not cancelled", oldest.future.isCancelled());
+        assertEquals(1, queue.size());
+        assertSame(newest, queue.take());
+    }
+
+    @Test
+    public void testPowerLatestWins() throws Exception {
+        CommandQueue queue = new CommandQueue(4, BackpressurePolicy.FAIL);
+        PendingCommand on = new PendingCommand(ArduinoCommand.LED_ON);
+        PendingCommand off = new PendingCommand(ArduinoCommand.LED_OFF);
+        PendingCommand white = new PendingCommand(ArduinoCommand.LED_COLOR_WHITE);
+        queue.offer(on);
+        queue.offer(white);
+        queue.offer(off);
+
+        assertEquals(2, queue.size());
+        PendingCommand taken = queue.take();
+        assertEquals("latest command was not written in place of the waiting one", ArduinoCommand.LED_OFF,
+                taken.command);
+        assertSame(white, queue.take());
+
+        taken.future.complete("OK");
+        assertEquals("latest command did not complete with the waiting one", "OK", off.future.get());
+    }
+
+    @Test
+    public void testPowerIsNotMergedOverIntensity() throws Exception {
+        CommandQueue queue = new CommandQueue(4, BackpressurePolicy.FAIL);
+        queue.offer(new PendingCommand(ArduinoCommand.LED_ON));
+        queue.offer(new PendingCommand(ArduinoCommand.LED_INTENSITY_PLUS));
+        queue.offer(new PendingCommand(ArduinoCommand.LED_OFF));
+        queue.offer(new PendingCommand(ArduinoCommand.LED_ON));
+
+        assertEquals(3, queue.size());
+        assertEquals(ArduinoCommand.LED_ON, queue.take().command);
+        assertEquals(ArduinoCommand.LED_INTENSITY_PLUS, queue.take().command);
+        assertEquals(ArduinoCommand.LED_ON, queue.take().command);
+    }
+
+    @Test
+    public void testPowerCancelsOutAfterIntensity() throws Exception {
+        CommandQueue queue = new CommandQueue(4, BackpressurePolicy.FAIL);
+        queue.offer(new PendingCommand(ArduinoCommand.LED_ON));
+        queue.take().future.complete("OK 0");
+
+        queue.offer(new PendingCommand(ArduinoCommand.LED_ON));
+        queue.offer(new PendingCommand(ArduinoCommand.LED_INTENSITY_PLUS));
+        queue.offer(new PendingCommand(ArduinoCommand.LED_OFF));
+        queue.offer(new PendingCommand(ArduinoCommand.LED_ON));
+
+        // Intensity is still changed while the LEDs are on.
+        assertEquals(2, queue.size());
+        assertEquals(ArduinoCommand.LED_ON, queue.take().command);
+        assertEquals(ArduinoCommand.LED_INTENSITY_PLUS, queue.take().command);
+    }
+
+    @Test
+    public void testPowerCancelsOut() throws Exception {
+        CommandQueue queue = new CommandQueue(4, BackpressurePolicy.FAIL);
+        queue.offer(new PendingCommand(ArduinoCommand.LED_ON));
+        queue.take().future.complete("OK 0");
+
+        PendingCommand off = new PendingCommand(ArduinoCommand.LED_OFF);
+        PendingCommand on = new PendingCommand(ArduinoCommand.LED_ON);
+        queue.offer(off);
+        queue.offer(on);
+
+        assertEquals("opposite commands did not cancel out", 0, queue.size());
+        assertTrue(off.future.isDone());
+        assertTrue(on.future.isDone());
+    }
+
+    @Test
+    public void testPowerDoesNotCancelOutBeforeAcknowledgement() throws Exception {
+        CommandQueue queue = new CommandQueue(4, BackpressurePolicy.FAIL);
+        queue.offer(new PendingCommand(ArduinoCommand.LED_ON));
+        PendingCommand taken = queue.take();
+
+        // Device may still reject the taken command.
+        queue.offer(new PendingCommand(ArduinoCommand.LED_OFF));
+        queue.offer(new PendingCommand(ArduinoCommand.LED_ON));
+        assertEquals(1, queue.size());
+
+        // Failed command leaves the state of the device unknown.
+        taken.future.completeExceptionally(new IllegalStateException("ERR 0"));
+        queue.offer(new PendingCommand(ArduinoCommand.LED_OFF));
+        queue.offer(new PendingCommand(ArduinoCommand.LED_ON));
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void testPowerReassertIsNotDropped() throws Exception {
+        CommandQueue queue = new CommandQueue(4, BackpressurePolicy.FAIL);
+        queue.offer(new PendingCommand(ArduinoCommand.LED_ON));
+        queue.take();
+        queue.offer(new PendingCommand(ArduinoCommand.LED_ON));
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void testIntensityNetDelta() throws Exception {
+        CommandQueue queue = new CommandQueue(4, BackpressurePolicy.FAIL);
+        queue.offer(new PendingCommand(ArduinoCommand.LED_INTENSITY_PLUS));
+        queue.offer(new PendingCommand(ArduinoCommand.LED_INTENSITY_PLUS));
+        queue.offer(new PendingCommand(ArduinoCommand.LED_INTENSITY_MINUS));
+        queue.offer(new PendingCommand(ArduinoCommand.LED_INTENSITY_MINUS));
+        queue.offer(new PendingCommand(ArduinoCommand.LED_INTENSITY_MINUS));
+
+        assertEquals(1, queue.size());
+        PendingCommand merged = queue.take();
+        assertEquals(ArduinoCommand.LED_INTENSITY_MINUS, merged.command);
+        assertEquals(1, merged.repeat);
+    }
+
+    @Test
+    public void testIntensityIsNotMergedOverOtherCommands() throws Exception {
+        CommandQueue queue = new CommandQueue(4, BackpressurePolicy.FAIL);
+        queue.offer(new PendingCommand(ArduinoCommand.LED_INTENSITY_PLUS));
+        queue.offer(new PendingCommand(ArduinoCommand.LED_ON));
+        queue.offer(new PendingCommand(ArduinoCommand.LED_INTENSITY_PLUS));
+
+        assertEquals(3, queue.size());
+        assertEquals(ArduinoCommand.LED_INTENSITY_PLUS, queue.take().command);
+        assertEquals(ArduinoCommand.LED_ON, queue.take().command);
+        assertEquals(ArduinoCommand.LED_INTENSITY_PLUS, queue.take().command);
+    }
+
+    @Test
+    public void testIntensityCancelsOut() throws Exception {
+        CommandQueue queue = new CommandQueue(4, BackpressurePolicy.FAIL);
+        PendingCommand plus = new PendingCommand(ArduinoCommand.LED_INTENSITY_PLUS);
+        PendingCommand minus = new PendingCommand(ArduinoCommand.LED_INTENSITY_MINUS);
+        queue.offer(plus);
+        queue.offer(minus);
+
+        assertEquals(0, queue.size());
+        assertTrue(plus.future.isDone());
+        assertTrue(minus.future.isDone());
+    }
+
+    @Test
+    public void testBlock() throws Exception {
+        CommandQueue queue = new CommandQueue(1, BackpressurePolicy.BLOCK);
+        queue.offer(new PendingCommand(ArduinoCommand.LED_ON));
+
+        CountDownLatch offered = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            try {
+                queue.offer(new PendingCommand(ArduinoCommand.LED_COLOR_WHITE));
+                offered.countDown();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        producer.start();
+
+        assertFalse("producer was not blocked", offered.await(100, TimeUnit.MILLISECONDS));
+        queue.take();
+        assertTrue("producer was not unblocked", offered.await(1, TimeUnit.SECONDS));
+        assertEquals(ArduinoCommand.LED_COLOR_WHITE, queue.take().command);
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.comm;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class FadeCurveTest {
+
+    private static final double DELTA = 0.0001;
+
+    @Test
+    public void testLinearTimeOf() throws Exception {
+        assertEquals(0.25, FadeCurve.LINEAR.timeOf(0.25), DELTA);
+        assertEquals(1, FadeCurve.LINEAR.timeOf(1), DELTA);
+    }
+
+    @Test
+    public void testEaseInTimeOf() throws Exception {
+        // Quarter of intensity change is reached in half of the time.
+        assertEquals(0.5, FadeCurve.EASE_IN.timeOf(0.25), DELTA);
+    }
+
+    @Test
+    public void testTimeOfIsInverse() throws Exception {
+        for (double p = 0; p <= 1; p += 0.1) {
+            assertEquals(p, FadeCurve.EASE_IN_OUT.apply(FadeCurve.EASE_IN_OUT.timeOf(p)), DELTA);
+        }
+    }
+}
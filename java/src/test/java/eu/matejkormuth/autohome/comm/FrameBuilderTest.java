@@ -0,0 +1,83 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.comm;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FrameBuilderTest {
+
+    @Test
+    public void testCrc8() throws Exception {
+        // Check value of CRC-8 with polynomial 0x07.
+        byte crc = 0;
+        for (byte b : "123456789".getBytes(StandardCharsets.US_ASCII)) {
+            crc = FrameBuilder.crc8(crc, b);
+        }
+        assertEquals((byte) 0xF4, crc);
+    }
+
+    @Test
+    public void testMultipleCommands() throws Exception {
+        FrameBuilder frame = new FrameBuilder();
+        frame.add(ArduinoCommand.LED_ON.getOpcode());
+        frame.add(ArduinoCommand.LED_INTENSITY_PLUS.getOpcode(), (byte) 3);
+        byte[] bytes = frame.toByteArray(200);
+
+        assertEquals(2, frame.size());
+        assertArrayEquals(new byte[]{FrameBuilder.SYNC, (byte) 200, 5, 0x01, 0, 0x04, 1, 3},
+                Arrays.copyOf(bytes, bytes.length - 1));
+
+        byte crc = 0;
+        for (int i = 1; i < bytes.length - 1; i++) {
+            crc = FrameBuilder.crc8(crc, bytes[i]);
+        }
+        assertEquals("invalid checksum", crc, bytes[bytes.length - 1]);
+    }
+
+    @Test
+    public void testFull() throws Exception {
+        FrameBuilder frame = new FrameBuilder();
+        int added = 0;
+        while (frame.add(ArduinoCommand.LED_OFF.getOpcode())) {
+            added++;
+        }
+        assertEquals(FrameBuilder.MAX_PAYLOAD / 2, added);
+        assertEquals(FrameBuilder.MAX_PAYLOAD + 4, frame.toByteArray(0).length);
+
+        frame.reset();
+        assertTrue(frame.isEmpty());
+        assertFalse(frame.add((byte) 1, new byte[FrameBuilder.MAX_PAYLOAD]));
+    }
+}
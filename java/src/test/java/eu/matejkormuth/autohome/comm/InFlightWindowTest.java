@@ -0,0 +1,138 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.comm;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InFlightWindowTest {
+
+    @Test
+    public void testCumulativeAcknowledge() throws Exception {
+        InFlightWindow window = new InFlightWindow(4, 64, 1000, 250, TimeUnit.MILLISECONDS);
+        Transmission first = transmission(window, 1);
+        Transmission second = transmission(window, 1);
+        Transmission third = transmission(window, 1);
+        long now = System.nanoTime();
+        window.add(first, now);
+        window.add(second, now);
+        window.add(third, now);
+
+        // Acknowledgement of the second transmission also acknowledges the first one.
+        List<Transmission> acknowledged = window.acknowledge(second.seq);
+        assertEquals(2, acknowledged.size());
+        assertEquals(first, acknowledged.get(0));
+        assertEquals(second, acknowledged.get(1));
+        assertEquals(1, window.size());
+
+        // Repeated acknowledgement is ignored.
+        assertTrue(window.acknowledge(first.seq).isEmpty());
+        assertEquals(1, window.acknowledge(third.seq).size());
+        assertEquals(0, window.size());
+    }
+
+    @Test
+    public void testSpace() throws Exception {
+        InFlightWindow window = new InFlightWindow(2, 20, 1000, 250, TimeUnit.MILLISECONDS);
+        assertTrue(window.awaitSpace(20));
+
+        long now = System.nanoTime();
+        Transmission first = transmission(window, 1);
+        window.add(first, now);
+        // Transmission does not fit into the device buffer until the first one is acknowledged.
+        Thread acknowledger = new Thread(() -> {
+            sleep(50);
+            window.acknowledge(first.seq);
+        });
+        acknowledger.start();
+        assertTrue(window.awaitSpace(15));
+        acknowledger.join();
+
+        // Full window stops waiting when the oldest transmission expires.
+        long past = now - TimeUnit.SECONDS.toNanos(10);
+        window.add(transmission(window, 1), past);
+        window.add(transmission(window, 1), past);
+        assertFalse(window.awaitSpace(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooLong() throws Exception {
+        InFlightWindow window = new InFlightWindow(2, 20, 1000, 250, TimeUnit.MILLISECONDS);
+        // Longer transmission does not fit even into empty window.
+        window.awaitSpace(21);
+    }
+
+    @Test
+    public void testExpired() throws Exception {
+        InFlightWindow window = new InFlightWindow(4, 64, 1000, 250, TimeUnit.MILLISECONDS);
+        Transmission first = transmission(window, 2);
+        Transmission second = transmission(window, 1);
+        long now = 0;
+        window.add(first, now);
+        window.add(second, now);
+
+        // Oldest transmission expires after timeout and the time needed to send its IR codes.
+        long expiry = TimeUnit.MILLISECONDS.toNanos(1000 + 2 * 250);
+        assertEquals(expiry, window.untilExpiry(now));
+        assertEquals(0, window.expired(expiry - 1).length);
+        Transmission[] expired = window.expired(expiry);
+        assertArrayEquals(new Transmission[]{first, second}, expired);
+        assertEquals(2, first.attempts);
+        assertEquals(expiry + TimeUnit.MILLISECONDS.toNanos(1000 + 3 * 250), second.deadline);
+
+        assertEquals(2, window.clear().length);
+        assertEquals(0, window.nextSeq());
+    }
+
+    @Test
+    public void testSequenceWraps() throws Exception {
+        InFlightWindow window = new InFlightWindow(1, 64, 1000, 250, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < InFlightWindow.SEQUENCE_SPACE; i++) {
+            assertEquals(i, window.nextSeq());
+        }
+        assertEquals(0, window.nextSeq());
+    }
+
+    private static Transmission transmission(InFlightWindow window, int sends) {
+        return new Transmission(window.nextSeq(), new byte[10], sends);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.comm;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class LineReaderTest {
+
+    private final List<String> lines = new ArrayList<>();
+    private final LineReader reader = new LineReader(32, line -> lines.add(line.toString()));
+
+    private void feed(String data) {
+        reader.feed(data.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testSplitBursts() throws Exception {
+        feed("Rea");
+        feed("dy!\r\nSending ON");
+        assertEquals(Arrays.asList("Ready!"), lines);
+        assertEquals(10, reader.pending());
+
+        feed(" code...\r\nA\nB\n\n");
+        assertEquals(Arrays.asList("Ready!", "Sending ON code...", "A", "B"), lines);
+        assertEquals(0, reader.pending());
+    }
+
+    @Test
+    public void testWrapAround() throws Exception {
+        // Lines cross the end of the buffer many times.
+        for (int i = 0; i < 20; i++) {
+            feed("line " + i + "\r\n");
+        }
+        assertEquals(20, lines.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals("line " + i, lines.get(i));
+        }
+    }
+
+    @Test
+    public void testLongLine() throws Exception {
+        feed("0123456789abcdef0123456789abcdefXYZ\n");
+        assertEquals(Arrays.asList("0123456789abcdef0123456789abcdef", "XYZ"), lines);
+    }
+
+    @Test
+    public void testView() throws Exception {
+        List<String> wrapped = new ArrayList<>();
+        LineReader reader = new LineReader(8, line -> {
+            if (line.length() == 2) {
+                // Line "OK" starts at the last byte of the buffer and wraps around.
+                assertEquals('O', line.charAt(0));
+                assertEquals('K', line.charAt(1));
+                assertEquals("K", line.subSequence(1, 2).toString());
+                wrapped.add(line.toString());
+            }
+        });
+        reader.feed("xxxxxx\nOK\n".getBytes(StandardCharsets.US_ASCII));
+        assertEquals(Arrays.asList("OK"), wrapped);
+    }
+}
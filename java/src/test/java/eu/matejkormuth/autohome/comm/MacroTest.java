@@ -0,0 +1,123 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.comm;
+
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MacroTest {
+
+    @Test
+    public void testLinearFade() throws Exception {
+        Macro macro = Macro.fade(ArduinoCommand.LED_INTENSITY_PLUS, 50, Duration.ofSeconds(25), FadeCurve.LINEAR);
+
+        // Linear fade has constant interval, so all segments are merged into one.
+        assertArrayEquals(new byte[]{0x04, 50, (byte) 0xF4, 0x01}, macro.toArgs());
+        assertEquals("LED_MACRO LED_IP 50 500", macro.toText());
+        assertEquals(50, macro.getSteps());
+        assertEquals(Duration.ofSeconds(25), macro.getDuration());
+    }
+
+    @Test
+    public void testCurveFade() throws Exception {
+        Macro macro = Macro.fade(ArduinoCommand.LED_INTENSITY_MINUS, 50, Duration.ofSeconds(25), FadeCurve.EASE_IN);
+
+        assertEquals(50, macro.getSteps());
+        assertTrue(macro.toArgs().length <= 1 + 3 * Macro.MAX_SEGMENTS);
+        // Last step is at the end of the fade, up to rounding of intervals.
+        long error = Math.abs(macro.getDuration().toMillis() - 25000);
+        assertTrue("fade ends " + error + " ms off", error < Macro.MAX_SEGMENTS);
+        // Ease in is slow at the start, so first steps are further apart than the last ones.
+        byte[] args = macro.toArgs();
+        int first = (args[2] & 0xFF) | (args[3] & 0xFF) << 8;
+        int last = (args[args.length - 2] & 0xFF) | (args[args.length - 1] & 0xFF) << 8;
+        assertTrue(first > last);
+    }
+
+    @Test
+    public void testStepsAt() throws Exception {
+        Macro macro = new Macro(ArduinoCommand.LED_INTENSITY_PLUS)
+                .repeat(2, Duration.ofMillis(100))
+                .repeat(300, Duration.ofMillis(10));
+
+        assertEquals(302, macro.getSteps());
+        assertEquals(0, macro.stepsAt(99));
+        assertEquals(2, macro.stepsAt(205));
+        assertEquals(3, macro.stepsAt(210));
+        assertEquals(302, macro.stepsAt(10000));
+        // Segment longer than 255 steps is split.
+        assertEquals(1 + 3 * 3, macro.toArgs().length);
+    }
+
+    @Test
+    public void testStop() throws Exception {
+        assertArrayEquals(new byte[]{0}, Macro.stop().toArgs());
+        assertEquals("LED_MACRO", Macro.stop().toText());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManySegments() throws Exception {
+        Macro macro = new Macro(ArduinoCommand.LED_INTENSITY_PLUS);
+        for (int i = 0; i <= Macro.MAX_SEGMENTS; i++) {
+            macro.repeat(1, Duration.ofMillis(i));
+        }
+    }
+
+    @Test
+    public void testTextFitsDeviceBuffer() throws Exception {
+        // "255 LED_MACRO LED_IP 10 100\n" is 28 bytes, each segment " 10 1000" adds 8 bytes.
+        Macro macro = new Macro(ArduinoCommand.LED_INTENSITY_PLUS).repeat(10, Duration.ofMillis(100));
+        macro.repeat(10, Duration.ofMillis(1000)).repeat(10, Duration.ofMillis(2000))
+                .repeat(10, Duration.ofMillis(3000)).repeat(10, Duration.ofMillis(4000));
+        // Segment " 1 1" makes it exactly 64 bytes.
+        macro.repeat(1, Duration.ofMillis(1));
+        assertTrue(ArduinoCOM.fits(macro, SerialProtocol.TEXT));
+        macro.repeat(1, Duration.ofMillis(2));
+        assertFalse(ArduinoCOM.fits(macro, SerialProtocol.TEXT));
+        assertTrue(ArduinoCOM.fits(macro, SerialProtocol.BINARY));
+    }
+
+    @Test
+    public void testFadeFitsDeviceBuffer() throws Exception {
+        Macro full = Macro.fade(ArduinoCommand.LED_INTENSITY_PLUS, 50, Duration.ofSeconds(25), FadeCurve.EASE_IN_OUT);
+        assertFalse(ArduinoCOM.fits(full, SerialProtocol.TEXT));
+
+        Macro macro = ArduinoCOM.fadeMacro(ArduinoCommand.LED_INTENSITY_PLUS, 50, Duration.ofSeconds(25),
+                FadeCurve.EASE_IN_OUT, SerialProtocol.TEXT);
+        assertTrue(ArduinoCOM.fits(macro, SerialProtocol.TEXT));
+        assertEquals(50, macro.getSteps());
+        assertTrue("fade is too short", Duration.ofSeconds(25).minus(macro.getDuration()).toMillis() < 50);
+        assertEquals(full.getSteps(), ArduinoCOM.fadeMacro(ArduinoCommand.LED_INTENSITY_PLUS, 50,
+                Duration.ofSeconds(25), FadeCurve.EASE_IN_OUT, SerialProtocol.BINARY).getSteps());
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.conditions;
+
+import eu.matejkormuth.autohome.api.Condition;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CachedConditionTest {
+
+    @Test
+    public void testTimeToLive() throws Exception {
+        AtomicInteger checks = new AtomicInteger();
+        CachedCondition condition = new CachedCondition(() -> checks.incrementAndGet() % 2 == 1,
+                Duration.ofMillis(100));
+
+        assertTrue(condition.check());
+        assertTrue(condition.check());
+        assertEquals(1, checks.get());
+
+        Thread.sleep(150);
+        assertFalse(condition.check());
+        assertEquals(2, checks.get());
+
+        condition.invalidate();
+        assertTrue(condition.check());
+        assertEquals(3, checks.get());
+    }
+
+    @Test
+    public void testSingleFlight() throws Exception {
+        AtomicInteger checks = new AtomicInteger();
+        CachedCondition condition = new CachedCondition(() -> {
+            checks.incrementAndGet();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return true;
+        }, Duration.ofSeconds(5));
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            Future<?>[] futures = new Future<?>[4];
+            for (int i = 0; i < futures.length; i++) {
+                futures[i] = pool.submit(() -> {
+                    start.await();
+                    return condition.check();
+                });
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                assertEquals(true, future.get(1, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, checks.get());
+    }
+
+    @Test
+    public void testTimeToLiveStartsAfterCheck() throws Exception {
+        AtomicInteger checks = new AtomicInteger();
+        CachedCondition condition = new CachedCondition(() -> {
+            checks.incrementAndGet();
+            try {
+                Thread.sleep(150);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return true;
+        }, Duration.ofMillis(200));
+
+        condition.check();
+        Thread.sleep(100);
+        condition.check();
+        assertEquals("result expired before its time to live", 1, checks.get());
+    }
+
+    @Test
+    public void testFailureIsShared() throws Exception {
+        AtomicInteger checks = new AtomicInteger();
+        CachedCondition condition = new CachedCondition(() -> {
+            checks.incrementAndGet();
+            throw new IllegalStateException("sensor is broken");
+        }, Duration.ofMillis(200));
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                condition.check();
+                fail("failure was not thrown");
+            } catch (IllegalStateException expected) {
+            }
+        }
+        assertEquals("failing condition was checked again", 1, checks.get());
+
+        Thread.sleep(250);
+        try {
+            condition.check();
+            fail("failure was not thrown");
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(2, checks.get());
+    }
+
+    @Test
+    public void testConditionCache() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+        ConditionCache cache = new ConditionCache(Duration.ofSeconds(5));
+
+        CachedCondition first = cache.get("phone", () -> {
+            created.incrementAndGet();
+            return () -> true;
+        });
+        CachedCondition second = cache.get("phone", () -> {
+            created.incrementAndGet();
+            return () -> true;
+        });
+        assertSame(first, second);
+        assertEquals(1, created.get());
+
+        Condition condition = () -> false;
+        assertSame(cache.get(condition), cache.get(condition));
+        assertNotSame(cache.get(condition), first);
+        assertEquals(2, cache.size());
+    }
+}
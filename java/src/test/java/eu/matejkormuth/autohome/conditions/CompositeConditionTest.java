@@ -0,0 +1,119 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.conditions;
+
+import eu.matejkormuth.autohome.Conditions;
+import eu.matejkormuth.autohome.api.Condition;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CompositeConditionTest {
+
+    private static final Condition TRUE = () -> true;
+    private static final Condition FALSE = () -> false;
+
+    @Test
+    public void testLogic() throws Exception {
+        assertTrue(CompositeCondition.allOf(TRUE, TRUE).check());
+        assertFalse(CompositeCondition.allOf(TRUE, FALSE).check());
+        assertTrue(CompositeCondition.anyOf(FALSE, TRUE).check());
+        assertFalse(CompositeCondition.anyOf(FALSE, FALSE).check());
+
+        assertTrue(Conditions.allOf(TRUE, Conditions.not(FALSE)).check());
+        assertFalse(Conditions.anyOf(FALSE, Conditions.not(TRUE)).check());
+        assertTrue(Conditions.allOf(Conditions.anyOf(FALSE, TRUE), TRUE).check());
+    }
+
+    @Test
+    public void testShortCircuit() throws Exception {
+        AtomicInteger checks = new AtomicInteger();
+        Condition counted = () -> checks.incrementAndGet() > 0;
+
+        assertFalse(CompositeCondition.allOf(FALSE, counted).check());
+        assertTrue(CompositeCondition.anyOf(TRUE, counted).check());
+        assertEquals(0, checks.get());
+    }
+
+    @Test
+    public void testFlatten() throws Exception {
+        Condition a = () -> true;
+        Condition b = () -> true;
+        Condition c = () -> true;
+
+        CompositeCondition composite = CompositeCondition.allOf(CompositeCondition.allOf(a, b), c);
+        assertEquals(3, composite.getOrder().size());
+        assertEquals(2, CompositeCondition.anyOf(CompositeCondition.allOf(a, b), c).getOrder().size());
+    }
+
+    @Test
+    public void testReorder() throws Exception {
+        AtomicInteger slowChecks = new AtomicInteger();
+        Condition slow = () -> {
+            slowChecks.incrementAndGet();
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return true;
+        };
+        Condition cheap = () -> false;
+
+        CompositeCondition composite = CompositeCondition.allOf(slow, cheap);
+        for (int i = 0; i < 100; i++) {
+            assertFalse(composite.check());
+        }
+
+        assertSame(cheap, composite.getOrder().get(0));
+        assertTrue("slow condition was checked " + slowChecks.get() + " times", slowChecks.get() < 50);
+    }
+
+    @Test
+    public void testSkippedOperandIsSampled() throws Exception {
+        AtomicInteger checks = new AtomicInteger();
+        Condition skipped = () -> checks.incrementAndGet() > 0;
+
+        CompositeCondition composite = CompositeCondition.allOf(FALSE, skipped);
+        for (int i = 0; i < 15; i++) {
+            composite.check();
+        }
+        assertEquals(0, checks.get());
+
+        // Operand without samples is moved to the front to get measured.
+        for (int i = 0; i < 200; i++) {
+            assertFalse(composite.check());
+        }
+        assertTrue("skipped operand was not sampled", checks.get() > 1);
+        assertTrue("skipped operand was checked " + checks.get() + " times", checks.get() < 50);
+    }
+}
@@ -0,0 +1,312 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.executor;
+
+import eu.matejkormuth.autohome.conditions.AbstractPushCondition;
+import eu.matejkormuth.autohome.conditions.SettableCondition;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ExecutorTest {
+
+    private final Executor executor = new Executor(4);
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testEvery() throws Exception {
+        AtomicInteger fast = new AtomicInteger();
+        AtomicInteger slow = new AtomicInteger();
+        executor.when(() -> true).every(Duration.ofMillis(100)).isTrue(fast::incrementAndGet);
+        executor.when(() -> true).every(Duration.ofSeconds(10)).isTrue(slow::incrementAndGet);
+
+        Thread.sleep(1050);
+        assertTrue("fast when was checked only " + fast.get() + " times", fast.get() >= 5);
+        assertTrue("slow when was checked " + slow.get() + " times", slow.get() == 1);
+    }
+
+    @Test
+    public void testParallelTimeout() throws Exception {
+        CountDownLatch timedOut = new CountDownLatch(1);
+        CountDownLatch fast = new CountDownLatch(1);
+        executor.parallel(Duration.ofMillis(200));
+        executor.when(() -> sleep(5000)).isFalse(timedOut::countDown);
+        executor.when(() -> true).isTrue(fast::countDown);
+
+        assertTrue("slow condition was not counted as false", timedOut.await(1, TimeUnit.SECONDS));
+        assertTrue("fast condition was not checked", fast.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testParallelTimeoutWithoutFreeThreads() throws Exception {
+        Executor ticked = new Executor(2, false).parallel(Duration.ofMillis(100));
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger started = new AtomicInteger();
+        AtomicInteger timedOut = new AtomicInteger();
+        try {
+            // More uninterruptible checks than there are threads.
+            for (int i = 0; i < 5; i++) {
+                ticked.when(() -> {
+                    started.incrementAndGet();
+                    awaitUninterruptibly(release);
+                    return true;
+                }).isFalse(timedOut::incrementAndGet);
+            }
+
+            long now = System.nanoTime();
+            assertTrue("tick did not complete", tickWithin(ticked, now + TimeUnit.MILLISECONDS.toNanos(100), 1000));
+            assertEquals(5, timedOut.get());
+            assertEquals(2, started.get());
+
+            // Blocked checks are not submitted again, queued ones are.
+            assertTrue("tick did not complete", tickWithin(ticked, now + TimeUnit.SECONDS.toNanos(8), 1000));
+            assertEquals(8, timedOut.get());
+            assertEquals(2, started.get());
+        } finally {
+            release.countDown();
+            ticked.shutdown();
+        }
+    }
+
+    @Test
+    public void testOverrunsInEveryMode() throws Exception {
+        Executor ticked = new Executor(2, false);
+        try {
+            // Processing longer than half of the interval is an overrun, regardless of other whens.
+            ticked.when(() -> sleep(80)).every(Duration.ofMillis(100));
+            ticked.when(() -> sleep(80));
+
+            long now = System.nanoTime();
+            assertTrue("tick did not complete", tickWithin(ticked, now + TimeUnit.MILLISECONDS.toNanos(100), 1000));
+            assertEquals("sequential overrun was not counted", 1, ticked.getMetrics().getOverruns());
+
+            ticked.parallel(Duration.ofSeconds(1));
+            assertTrue("tick did not complete", tickWithin(ticked, now + TimeUnit.MILLISECONDS.toNanos(300), 1000));
+            assertEquals("parallel overrun was not counted", 2, ticked.getMetrics().getOverruns());
+        } finally {
+            ticked.shutdown();
+        }
+    }
+
+    private static boolean tickWithin(Executor executor, long now, long millis) throws InterruptedException {
+        Thread ticker = new Thread(() -> executor.tick(now));
+        ticker.start();
+        ticker.join(millis);
+        return !ticker.isAlive();
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        while (true) {
+            try {
+                latch.await();
+                return;
+            } catch (InterruptedException e) {
+                // Like InetAddress.isReachable(), ignore interrupts.
+            }
+        }
+    }
+
+    @Test
+    public void testPushCondition() throws Exception {
+        SettableCondition condition = new SettableCondition(false);
+        CountDownLatch initial = new CountDownLatch(1);
+        CountDownLatch pushed = new CountDownLatch(1);
+        AtomicInteger checks = new AtomicInteger();
+        executor.when(condition).every(Duration.ofMillis(100))
+                .isFalse(initial::countDown)
+                .isTrue(pushed::countDown)
+                .isTrue(checks::incrementAndGet);
+
+        assertTrue("push condition was not checked initially", initial.await(1, TimeUnit.SECONDS));
+        condition.set(true);
+        assertTrue("pushed value was not processed", pushed.await(100, TimeUnit.MILLISECONDS));
+
+        // Push conditions are not polled.
+        Thread.sleep(300);
+        assertTrue("push condition was polled", checks.get() == 1);
+    }
+
+    @Test
+    public void testPushDuringFirstCheck() throws Exception {
+        List<Boolean> states = new CopyOnWriteArrayList<>();
+        CountDownLatch pushed = new CountDownLatch(1);
+        executor.when(new AbstractPushCondition() {
+            @Override
+            public boolean check() {
+                // Value changes while it is being checked, so the result is already stale.
+                publish(true);
+                return false;
+            }
+        }).stateChanged(states::add).isTrue(pushed::countDown);
+
+        assertTrue("pushed value was not processed", pushed.await(1, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals(Collections.singletonList(true), states);
+    }
+
+    @Test
+    public void testCircuitBreaker() throws Exception {
+        AtomicInteger checks = new AtomicInteger();
+        CountDownLatch fallback = new CountDownLatch(1);
+        executor.when(() -> {
+            checks.incrementAndGet();
+            throw new IllegalStateException("sensor is broken");
+        }).every(Duration.ofMillis(100))
+                .circuitBreaker(3, Duration.ofSeconds(10), false)
+                .isFalse(fallback::countDown);
+
+        assertTrue("fallback state was not reported", fallback.await(1, TimeUnit.SECONDS));
+        // Open breaker stops checking of the condition.
+        Thread.sleep(500);
+        assertTrue("broken condition was checked " + checks.get() + " times", checks.get() == 3);
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        // Listener latency is recorded after the listener returns, so wait for one more check.
+        CountDownLatch checked = new CountDownLatch(4);
+        When when = executor.when(() -> true).every(Duration.ofMillis(100)).isTrue(checked::countDown);
+        executor.exposeMetrics("test");
+
+        assertTrue("condition was not checked", checked.await(1, TimeUnit.SECONDS));
+        assertTrue(when.getMetrics().getChecks() >= 3);
+        assertTrue(when.getMetrics().getListenerRuns() >= 3);
+        assertTrue(executor.getMetrics().getTicks() >= 3);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("eu.matejkormuth.autohome:type=\"When\",name=\"test/0\"");
+        assertTrue((Long) server.getAttribute(name, "Checks") >= 3);
+
+        executor.shutdown();
+        assertFalse("MBean was not unregistered", server.isRegistered(name));
+    }
+
+    @Test
+    public void testVirtualThreads() throws Exception {
+        String version = System.getProperty("java.specification.version");
+        boolean available = !version.startsWith("1.") && Integer.parseInt(version) >= 21;
+
+        CountDownLatch checked = new CountDownLatch(2);
+        executor.virtualThreads(Duration.ofMillis(500));
+        executor.when(() -> sleep(50)).every(Duration.ofMillis(100)).isTrue(checked::countDown);
+
+        assertEquals(available, executor.isVirtual());
+        assertTrue("blocking condition was not checked", checked.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        AtomicInteger checks = new AtomicInteger();
+        CountDownLatch checked = new CountDownLatch(2);
+        When when = executor.when(() -> checks.incrementAndGet() > 0).every(Duration.ofMillis(100))
+                .isTrue(checked::countDown);
+        assertTrue("condition was not checked", checked.await(1, TimeUnit.SECONDS));
+
+        when.cancel();
+        assertTrue(when.isCancelled());
+        assertEquals(0, executor.size());
+        int cancelledAt = checks.get();
+        Thread.sleep(300);
+        // Check that was already running when cancelled could still complete.
+        assertTrue("cancelled when was checked", checks.get() <= cancelledAt + 1);
+    }
+
+    @Test
+    public void testCancelPushCondition() throws Exception {
+        SettableCondition condition = new SettableCondition(false);
+        CountDownLatch initial = new CountDownLatch(1);
+        AtomicInteger pushed = new AtomicInteger();
+        When when = executor.when(condition).isFalse(initial::countDown).isTrue(pushed::incrementAndGet);
+        assertTrue("push condition was not checked initially", initial.await(1, TimeUnit.SECONDS));
+
+        when.cancel();
+        condition.set(true);
+        Thread.sleep(100);
+        assertEquals(0, pushed.get());
+    }
+
+    @Test
+    public void testConcurrentRegistration() throws Exception {
+        AtomicInteger checks = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    When when = executor.when(() -> checks.incrementAndGet() > 0).every(Duration.ofMillis(100));
+                    if (i % 2 == 0) {
+                        when.cancel();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1000, executor.size());
+        Thread.sleep(300);
+        assertTrue("whens were not checked", checks.get() >= 1000);
+    }
+
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return true;
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testParallelNeedsThreads() throws Exception {
+        Executor single = new Executor(1);
+        try {
+            single.parallel(Duration.ofMillis(200));
+        } finally {
+            single.shutdown();
+        }
+    }
+}
@@ -28,6 +28,8 @@ package eu.matejkormuth.autohome.executor;
 
 import org.junit.Test;
 
+import java.time.Duration;
+
 import static org.junit.Assert.*;
 
 public class ThresholdTest {
@@ -53,6 +55,60 @@ public class ThresholdTest {
         assertFalse("threshold is not false", triggered[0]);
     }
 
+    @Test
+    public void testLevelTriggered() throws Exception {
+        final int[] triggered = {0};
+        Threshold t = new Threshold(2);
+        t.isTrue(() -> triggered[0]++);
+        for (int i = 0; i < 5; i++) {
+            t.onStateUpdated(true);
+        }
+        assertEquals("threshold should trigger on every update after reaching threshold", 4, triggered[0]);
+    }
+
+    @Test
+    public void testEdgeTriggered() throws Exception {
+        final int[] triggered = {0, 0};
+        Threshold t = new Threshold(2).edgeTriggered();
+        t.isTrue(() -> triggered[0]++);
+        t.isFalse(() -> triggered[1]++);
+        for (int i = 0; i < 5; i++) {
+            t.onStateUpdated(true);
+        }
+        assertEquals("edge triggered threshold should trigger true once", 1, triggered[0]);
+        for (int i = 0; i < 5; i++) {
+            t.onStateUpdated(false);
+        }
+        assertEquals("edge triggered threshold should trigger false once", 1, triggered[1]);
+        t.onStateUpdated(true);
+        t.onStateUpdated(true);
+        assertEquals("edge triggered threshold should trigger true again", 2, triggered[0]);
+    }
+
+    @Test
+    public void testEdgeTriggeredReassert() throws Exception {
+        final int[] triggered = {0};
+        Threshold t = new Threshold(1).edgeTriggered(Duration.ofMillis(50));
+        t.isTrue(() -> triggered[0]++);
+        t.onStateUpdated(true);
+        t.onStateUpdated(true);
+        assertEquals(1, triggered[0]);
+        Thread.sleep(60);
+        t.onStateUpdated(true);
+        assertEquals("state should be re-asserted after interval", 2, triggered[0]);
+    }
+
+    @Test
+    public void testEdgeTriggeredPassesEveryStateToProcessors() throws Exception {
+        final boolean[] triggered = {false};
+        Threshold t = new Threshold(1).edgeTriggered();
+        t.stateChanged(new Threshold(3).isTrue(() -> triggered[0] = true));
+        t.onStateUpdated(true);
+        t.onStateUpdated(true);
+        t.onStateUpdated(true);
+        assertTrue("chained threshold did not receive all states", triggered[0]);
+    }
+
     @Test
     public void testParentNull() throws Exception {
         assertNull("parent should be null", new Threshold(5).parent());
@@ -0,0 +1,101 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.executor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TimingWheelTest {
+
+    private static final long TICK = 100;
+
+    @Test
+    public void testExpiresAtDeadline() throws Exception {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 8, 0);
+        List<String> expired = new ArrayList<>();
+        wheel.schedule("a", 300);
+        wheel.schedule("b", 500);
+
+        wheel.advance(250, expired::add);
+        assertTrue("item expired before deadline", expired.isEmpty());
+
+        wheel.advance(300, expired::add);
+        assertEquals("a", String.join(",", expired));
+
+        wheel.advance(550, expired::add);
+        assertEquals("a,b", String.join(",", expired));
+    }
+
+    @Test
+    public void testDeadlineAfterMoreRevolutions() throws Exception {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 4, 0);
+        List<String> expired = new ArrayList<>();
+        // Same bucket as tick 2, but two revolutions later.
+        wheel.schedule("late", 1000);
+
+        for (long now = 0; now < 1000; now += TICK) {
+            wheel.advance(now, expired::add);
+            assertTrue("item expired in wrong revolution at " + now, expired.isEmpty());
+        }
+        wheel.advance(1000, expired::add);
+        assertEquals("late", String.join(",", expired));
+    }
+
+    @Test
+    public void testLateAdvanceExpiresEverything() throws Exception {
+        TimingWheel<Integer> wheel = new TimingWheel<>(TICK, 4, 0);
+        List<Integer> expired = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            wheel.schedule(i, i * TICK);
+        }
+        wheel.advance(5000, expired::add);
+        assertEquals(10, expired.size());
+    }
+
+    @Test
+    public void testPastDeadlineExpiresInNextTick() throws Exception {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 8, 0);
+        List<String> expired = new ArrayList<>();
+        wheel.advance(400, expired::add);
+        wheel.schedule("past", 100);
+
+        wheel.advance(450, expired::add);
+        assertTrue("item expired in already processed tick", expired.isEmpty());
+        wheel.advance(500, expired::add);
+        assertEquals("past", String.join(",", expired));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBucketCountPowerOfTwo() throws Exception {
+        new TimingWheel<String>(TICK, 6, 0);
+    }
+}
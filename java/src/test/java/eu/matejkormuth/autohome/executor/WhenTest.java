@@ -0,0 +1,131 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.executor;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class WhenTest {
+
+    private static final long MIN = TimeUnit.SECONDS.toNanos(1);
+    private static final long MAX = TimeUnit.SECONDS.toNanos(5);
+
+    @Test
+    public void testAdaptive() throws Exception {
+        When when = new When(() -> true).adaptive(Duration.ofSeconds(1), Duration.ofSeconds(5));
+        assertEquals(MIN, when.nextInterval());
+
+        when.notifyTrue();
+        assertEquals(MIN, when.nextInterval());
+        when.notifyTrue();
+        assertEquals(2 * MIN, when.nextInterval());
+        when.notifyTrue();
+        assertEquals(4 * MIN, when.nextInterval());
+        when.notifyTrue();
+        assertEquals(MAX, when.nextInterval());
+        when.notifyTrue();
+        assertEquals(MAX, when.nextInterval());
+
+        // Flip snaps back.
+        when.notifyFalse();
+        assertEquals(MIN, when.nextInterval());
+        when.notifyFalse();
+        assertEquals(2 * MIN, when.nextInterval());
+
+        // Fixed interval disables adaptive polling.
+        when.every(Duration.ofSeconds(3));
+        when.notifyFalse();
+        assertEquals(TimeUnit.SECONDS.toNanos(3), when.nextInterval());
+    }
+
+    @Test
+    public void testAdaptiveThresholdCounting() throws Exception {
+        When when = new When(() -> true).adaptive(Duration.ofSeconds(1), Duration.ofSeconds(5));
+        when.threshold(3);
+
+        // Threshold is counting until it receives 3 same states.
+        when.notifyTrue();
+        when.notifyTrue();
+        assertEquals(MIN, when.nextInterval());
+        when.notifyTrue();
+        assertEquals(2 * MIN, when.nextInterval());
+        when.notifyTrue();
+        assertEquals(4 * MIN, when.nextInterval());
+
+        // Flip starts counting again and keeps polling fast.
+        when.notifyFalse();
+        assertEquals(MIN, when.nextInterval());
+        when.notifyFalse();
+        assertEquals(MIN, when.nextInterval());
+        when.notifyFalse();
+        assertEquals(2 * MIN, when.nextInterval());
+    }
+
+    @Test
+    public void testListenerOrder() throws Exception {
+        List<String> calls = new ArrayList<>();
+        When when = new When(() -> true)
+                .isTrue(() -> calls.add("first"))
+                .stateChanged(state -> calls.add("processor " + state))
+                .isFalse(() -> calls.add("false"))
+                .isTrue(() -> calls.add("last"))
+                .edgeTriggered();
+
+        when.notifyTrue();
+        assertEquals(Arrays.asList("first", "processor true", "last"), calls);
+
+        // Repeated states are filtered for processors too.
+        calls.clear();
+        when.notifyTrue();
+        assertEquals(Arrays.asList(), calls);
+    }
+
+    @Test
+    public void testProcessorInEdgeTriggeredThreshold() throws Exception {
+        List<Boolean> states = new ArrayList<>();
+        When when = new When(() -> true);
+        when.threshold(2)
+                .edgeTriggered()
+                .stateChanged(states::add);
+
+        for (int i = 0; i < 5; i++) {
+            when.notifyTrue();
+        }
+        assertEquals("processor did not receive only the debounced change", Arrays.asList(true), states);
+        when.notifyFalse();
+        assertEquals(Arrays.asList(true), states);
+        when.notifyFalse();
+        assertEquals(Arrays.asList(true, false), states);
+    }
+}
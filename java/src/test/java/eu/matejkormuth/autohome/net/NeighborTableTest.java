@@ -0,0 +1,84 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.net;
+
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class NeighborTableTest {
+
+    @Test
+    public void testParseArp() throws Exception {
+        NeighborTable.Snapshot snapshot = NeighborTable.parseArp(Arrays.asList(
+                "IP address       HW type     Flags       HW address            Mask     Device",
+                "192.168.0.14     0x1         0x2         AA:BB:CC:DD:EE:FF     *        wlan0",
+                "192.168.0.15     0x1         0x0         00:00:00:00:00:00     *        wlan0",
+                "192.168.0.16     0x1         garbage     11:22:33:44:55:66     *        wlan0"
+        ));
+
+        assertEquals("aa:bb:cc:dd:ee:ff", snapshot.byIp.get("192.168.0.14"));
+        assertEquals("192.168.0.14", snapshot.byMac.get("aa:bb:cc:dd:ee:ff"));
+        assertFalse("incomplete entry is present", snapshot.byIp.containsKey("192.168.0.15"));
+        assertFalse("malformed entry is present", snapshot.byIp.containsKey("192.168.0.16"));
+    }
+
+    @Test
+    public void testParseLeases() throws Exception {
+        NeighborTable.Snapshot snapshot = NeighborTable.parseLeases(Arrays.asList(
+                "2000 aa:bb:cc:dd:ee:ff 192.168.0.14 phone 01:aa:bb:cc:dd:ee:ff",
+                "500 11:22:33:44:55:66 192.168.0.15 laptop *",
+                "0 22:33:44:55:66:77 192.168.0.16 printer *",
+                "soon 33:44:55:66:77:88 192.168.0.17 tv *"
+        ), 1000);
+
+        assertTrue(snapshot.byIp.containsKey("192.168.0.14"));
+        assertFalse("expired lease is present", snapshot.byIp.containsKey("192.168.0.15"));
+        assertTrue("infinite lease is not present", snapshot.byMac.containsKey("22:33:44:55:66:77"));
+        assertFalse("malformed lease is present", snapshot.byIp.containsKey("192.168.0.17"));
+    }
+
+    @Test
+    public void testPresenceIsShared() throws Exception {
+        Path leases = Files.createTempFile("dnsmasq", ".leases");
+        try (NeighborTable table = NeighborTable.dnsmasqLeases(leases)) {
+            assertSame("presence of the same address was registered again", table.presence("AA:BB:CC:DD:EE:FF"),
+                    table.presence("aa:bb:cc:dd:ee:ff"));
+            assertNotSame(table.presence("aa:bb:cc:dd:ee:ff"), table.presence("192.168.0.14"));
+        } finally {
+            Files.delete(leases);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.net;
+
+import eu.matejkormuth.autohome.api.Condition;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.time.Duration;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ProbeEngineTest {
+
+    @Test
+    public void testLocalhost() throws Exception {
+        try (ProbeEngine engine = new ProbeEngine(Duration.ofMillis(500));
+             ServerSocket server = new ServerSocket(0)) {
+            Condition open = engine.isReachable("127.0.0.1", server.getLocalPort());
+            assertFalse("condition is true before first round", open.check());
+
+            engine.probeAll();
+            assertTrue("localhost with open port is not reachable", open.check());
+            assertTrue(engine.getResult("127.0.0.1", server.getLocalPort()).getRoundTripNanos() >= 0);
+        }
+    }
+
+    @Test
+    public void testClosedPort() throws Exception {
+        int port;
+        try (ServerSocket server = new ServerSocket(0)) {
+            port = server.getLocalPort();
+        }
+        try (ProbeEngine engine = new ProbeEngine(Duration.ofMillis(500))) {
+            Condition closed = engine.isReachable("127.0.0.1", port);
+            engine.probeAll();
+            // Refused connection means the host is up.
+            assertTrue("localhost with closed port is not reachable", closed.check());
+        }
+    }
+
+    @Test
+    public void testManyHostsTakeOneTimeout() throws Exception {
+        try (ProbeEngine engine = new ProbeEngine(Duration.ofMillis(300))) {
+            // TEST-NET-1 addresses should not respond, but some networks refuse them, so only time is checked.
+            for (int i = 1; i <= 20; i++) {
+                engine.isReachable("192.0.2." + i, 80);
+            }
+
+            long start = System.nanoTime();
+            engine.probeAll();
+            long millis = (System.nanoTime() - start) / 1000000;
+
+            assertTrue("round took " + millis + " ms", millis < 1500);
+        }
+    }
+
+    @Test
+    public void testResolvedAddressIsReused() throws Exception {
+        try (ProbeEngine engine = new ProbeEngine(Duration.ofMillis(300))) {
+            ProbeEngine.Target target = engine.register("localhost", 80);
+            InetSocketAddress address = target.resolve(0);
+            assertSame("address was resolved again", address, target.resolve(ProbeEngine.RESOLVE_INTERVAL - 1));
+            assertNotSame("address was not resolved again", address, target.resolve(ProbeEngine.RESOLVE_INTERVAL));
+
+            // Unresolved address is resolved again on the next round.
+            ProbeEngine.Target unknown = engine.register("unknown.invalid", 80);
+            assertTrue(unknown.resolve(0).isUnresolved());
+            assertNotSame(unknown.resolve(0), unknown.resolve(1));
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.net;
+
+import org.junit.Test;
+
+import java.net.ServerSocket;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ReachabilityProbeTest {
+
+    @Test
+    public void testOpenPort() throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            ReachabilityProbe probe = new ReachabilityProbe("127.0.0.1", server.getLocalPort(), 1000);
+            ProbeResult result = probe.probe();
+            assertTrue("localhost with open port is not reachable", result.isReachable());
+            assertTrue("round trip time is negative", result.getRoundTripNanos() >= 0);
+            assertSame(result, probe.getLastResult());
+        }
+    }
+
+    @Test
+    public void testClosedPort() throws Exception {
+        int port;
+        try (ServerSocket server = new ServerSocket(0)) {
+            port = server.getLocalPort();
+        }
+        // Refused connection means the host is up.
+        ReachabilityProbe probe = new ReachabilityProbe("127.0.0.1", port, 1000);
+        assertTrue("localhost with closed port is not reachable", probe.check());
+    }
+
+    @Test
+    public void testUnresolved() throws Exception {
+        ReachabilityProbe probe = new ReachabilityProbe("host.invalid", 7, 100);
+        assertFalse("unresolved host is reachable", probe.check());
+        assertFalse(probe.getLastResult().isReachable());
+    }
+}
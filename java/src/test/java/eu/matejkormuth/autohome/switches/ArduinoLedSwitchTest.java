@@ -0,0 +1,180 @@
+/**
+ * AutoHome - Application for intelligent automatic house management.
+ * Copyright (c) 2015, Matej Kormuth <http://www.github.com/dobrakmato>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.matejkormuth.autohome.switches;
+
+import eu.matejkormuth.autohome.comm.LineListener;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ArduinoLedSwitchTest {
+
+    @Test
+    public void testRedundantPowerIsSkipped() throws Exception {
+        FakeDevice device = new FakeDevice();
+        ArduinoLedSwitch lights = new ArduinoLedSwitch(device, Duration.ZERO, Runnable::run);
+
+        assertTrue("state was not changed", lights.turnOnAsync().get());
+        assertFalse("state was changed again", lights.turnOnAsync().get());
+        assertTrue(lights.getState());
+        assertTrue("state was not changed", lights.turnOffAsync().get());
+        assertFalse(lights.getState());
+        assertEquals("[on, off]", device.commands.toString());
+    }
+
+    @Test
+    public void testRedundantIntensityIsSkipped() throws Exception {
+        FakeDevice device = new FakeDevice();
+        ArduinoLedSwitch lights = new ArduinoLedSwitch(device, Duration.ZERO, Runnable::run);
+
+        assertTrue("level was not changed", lights.setIntensityLevelAsync(10).get());
+        assertFalse("level was changed again", lights.setIntensityLevelAsync(10).get());
+        assertTrue("level was not changed", lights.setIntensityLevelAsync(20).get());
+        assertEquals(20, lights.getIntensityLevel());
+        assertEquals("first change was not calibrated", "[calibrate 10, set 20]", device.commands.toString());
+    }
+
+    @Test
+    public void testIntensityOfDeviceIsBelieved() throws Exception {
+        FakeDevice device = new FakeDevice();
+        ArduinoLedSwitch lights = new ArduinoLedSwitch(device, Duration.ZERO, Runnable::run);
+
+        lights.setIntensityLevelAsync(10).get();
+        // Level changed directly on the device, for example by fade.
+        device.level = 30;
+        assertEquals(30, lights.getIntensityLevel());
+        assertTrue("level was not changed", lights.setIntensityLevelAsync(10).get());
+        assertEquals("[calibrate 10, set 10]", device.commands.toString());
+    }
+
+    @Test
+    public void testFailedCommandIsSentAgain() throws Exception {
+        FakeDevice device = new FakeDevice();
+        ArduinoLedSwitch lights = new ArduinoLedSwitch(device, Duration.ZERO, Runnable::run);
+
+        device.failNext = true;
+        assertTrue(lights.turnOnAsync().isCompletedExceptionally());
+        lights.turnOnAsync().get();
+        lights.turnOnAsync().get();
+
+        lights.setIntensityLevelAsync(10).get();
+        device.failNext = true;
+        assertTrue(lights.setIntensityLevelAsync(20).isCompletedExceptionally());
+        lights.setIntensityLevelAsync(20).get();
+        assertEquals("[on, on, calibrate 10, set 20, calibrate 20]", device.commands.toString());
+    }
+
+    @Test
+    public void testRefreshInterval() throws Exception {
+        FakeDevice device = new FakeDevice();
+        ArduinoLedSwitch lights = new ArduinoLedSwitch(device, Duration.ofNanos(1), Runnable::run);
+
+        lights.turnOnAsync().get();
+        Thread.sleep(1);
+        assertFalse("state was changed again", lights.turnOnAsync().get());
+        assertEquals("command was not sent again", "[on, on]", device.commands.toString());
+    }
+
+    @Test
+    public void testReadyResyncs() throws Exception {
+        FakeDevice device = new FakeDevice();
+        List<Runnable> resyncs = new ArrayList<>();
+        ArduinoLedSwitch lights = new ArduinoLedSwitch(device, Duration.ZERO, resyncs::add);
+
+        lights.turnOnAsync().get();
+        lights.setIntensityLevelAsync(10).get();
+        device.listener.onLine("OK 3");
+        assertTrue(resyncs.isEmpty());
+
+        device.listener.onLine("Ready!");
+        assertEquals("resync was not run on executor", 1, resyncs.size());
+        assertEquals("[on, calibrate 10]", device.commands.toString());
+        resyncs.get(0).run();
+        assertTrue(lights.getState());
+        lights.setIntensityLevelAsync(10).get();
+        assertEquals("[on, calibrate 10, on, calibrate 10]", device.commands.toString());
+    }
+
+    // Device that records commands and acknowledges them immediately.
+    private static final class FakeDevice implements ArduinoLedSwitch.Device {
+        final List<String> commands = new ArrayList<>();
+        LineListener listener;
+        int level = 0;
+        boolean failNext = false;
+
+        @Override
+        public CompletableFuture<String> turnLedOn() {
+            return command("on");
+        }
+
+        @Override
+        public CompletableFuture<String> turnLedOff() {
+            return command("off");
+        }
+
+        @Override
+        public CompletableFuture<String> setIntensityLevel(int level) {
+            this.level = level;
+            return command("set " + level);
+        }
+
+        @Override
+        public CompletableFuture<String> calibrateIntensityLevel(int level) {
+            this.level = level;
+            return command("calibrate " + level);
+        }
+
+        @Override
+        public int getIntensityLevel() {
+            return level;
+        }
+
+        @Override
+        public void subscribe(LineListener listener) {
+            this.listener = listener;
+        }
+
+        private CompletableFuture<String> command(String command) {
+            commands.add(command);
+            CompletableFuture<String> future = new CompletableFuture<>();
+            if (failNext) {
+                failNext = false;
+                future.completeExceptionally(new IllegalStateException("Rejected!"));
+            } else {
+                future.complete("OK");
+            }
+            return future;
+        }
+    }
+}
@@ -53,4 +53,14 @@ public class FakeSwitchTest {
         fakeSwitch.turnOff();
         assertFalse("fake switch was on after turing it off", fakeSwitch.getState());
     }
+
+    @Test
+    public void testAsync() throws Exception {
+        FakeSwitch fakeSwitch = new FakeSwitch("Test");
+        assertTrue("state was not changed", fakeSwitch.turnOnAsync().get());
+        assertFalse("state was changed again", fakeSwitch.turnOnAsync().get());
+        assertTrue(fakeSwitch.getState());
+        assertTrue("state was not changed", fakeSwitch.turnOffAsync().get());
+        assertFalse(fakeSwitch.getState());
+    }
 }
\ No newline at end of file